@@ -0,0 +1,512 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 批处理命令行工具，代替各个类的main方法中逐个输入的交互方式
+ * 从文件或标准输入读入记录，按块在多个线程上并行处理，按输入顺序写出结果，
+ * 在途的块数有上限，内存占用与记录总数无关。
+ * 文本格式每行一条记录，字段以空格分隔，二进制数据用十六进制，消息和明文为行的原始字节(可以含空格，不能含换行)；
+ * 二进制格式(-binary)每个字段为4字节大端长度加内容，验证结果为1个字节。字段和行都不能超过256MiB。
+ *
+ * <pre>
+ * java BatchTool 操作 [选项]
+ *   keygen  -count n   输出n条：私钥d 公钥Q
+ *   sign    -key d     每条：消息，输出：DER签名
+ *   verify  -key Q     每条：DER签名 消息，输出：true/false，签名格式错误也输出false
+ *   encrypt -key Q     每条：明文，输出：ECIES密文
+ *   decrypt -key d     每条：ECIES密文，输出：明文
+ * 选项：
+ *   -keyfile 文件      从文件读入密钥，代替-key
+ *   -curve 名称        标准曲线，默认P-256
+ *   -hash 算法         签名的摘要算法，默认SHA
+ *   -deterministic     用RFC 6979产生k
+ *   -hardened          使用抗侧信道的数乘
+ *   -threads n         线程数，默认为处理器数
+ *   -in 文件           默认为标准输入
+ *   -out 文件          默认为标准输出
+ *   -binary            二进制格式
+ * </pre>
+ *
+ * 私钥为十六进制整数，公钥为SEC1编码的十六进制。
+ * 命令行参数可以被其他用户用ps看到，也会留在shell历史中，私钥应当用-keyfile传入
+ */
+public final class BatchTool {
+    // 读写缓冲区的字节数
+    private static final int BUFFER = 1 << 20;
+    // 每个任务处理的记录数
+    private static final int CHUNK = 256;
+    // 一个字段或一行的最大字节数
+    private static final int MAX_FIELD = 1 << 28;
+    private static final HexFormat HEX = HexFormat.of();
+
+    // 字段类型：十六进制、布尔值，其他为原始文本('t')
+    private static final char HEX_FIELD = 'h';
+    private static final char BOOLEAN_FIELD = 'b';
+
+    private final String op;
+    private final DomainParameters domain;
+    // 输入和输出每个字段的类型
+    private final String inputs;
+    private final String outputs;
+    private final boolean binary;
+    private Signer signer;
+    private Verifier verifier;
+    private ECIES ecies;
+    private DiffleHellman dh;
+    private BigInteger[] publicKey;
+    private BigInteger privateKey;
+
+    private BatchTool(String op, DomainParameters domain, String key, String hash, boolean deterministic,
+            boolean binary) {
+        this.op = op;
+        this.domain = domain;
+        this.binary = binary;
+        switch (op) {
+            case "keygen":
+                inputs = "";
+                outputs = "hh";
+                dh = new DiffleHellman(domain);
+                break;
+            case "sign":
+                inputs = "t";
+                outputs = "h";
+                signer = new Signer(domain, new BigInteger(required(key), 16), deterministic, hash);
+                break;
+            case "verify":
+                inputs = "ht";
+                outputs = "b";
+                verifier = new Verifier(domain, Encoding.decodePoint(domain.getCurve(), HEX.parseHex(required(key))),
+                        hash);
+                break;
+            case "encrypt":
+                inputs = "t";
+                outputs = "h";
+                ecies = new ECIES(domain);
+                publicKey = Encoding.decodePoint(domain.getCurve(), HEX.parseHex(required(key)));
+                break;
+            case "decrypt":
+                inputs = "h";
+                outputs = "t";
+                ecies = new ECIES(domain);
+                privateKey = new BigInteger(required(key), 16);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+    }
+
+    /**
+     * 读入密钥文件，去掉首尾空白
+     */
+    private static String readKey(String file) {
+        try {
+            return Files.readString(Paths.get(file), StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read key file: " + file, e);
+        }
+    }
+
+    private static String required(String key) {
+        if (key == null)
+            throw new IllegalArgumentException("Missing -key.");
+        return key;
+    }
+
+    public static void main(String[] args) throws IOException {
+        try {
+            run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void run(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: java BatchTool keygen|sign|verify|encrypt|decrypt [-key hex | -keyfile file] "
+                    + "[-count n] [-curve name] [-hash alg] [-deterministic] [-hardened] [-threads n] [-in file] "
+                    + "[-out file] [-binary]");
+            System.exit(2);
+        }
+        String curve = "P-256", key = null, hash = ECDSA.HASH, in = null, out = null;
+        long count = -1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean deterministic = false, hardened = false, binary = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-deterministic":
+                    deterministic = true;
+                    continue;
+                case "-hardened":
+                    hardened = true;
+                    continue;
+                case "-binary":
+                    binary = true;
+                    continue;
+                default:
+                    break;
+            }
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "-curve":
+                    curve = value;
+                    break;
+                case "-key":
+                    key = value;
+                    break;
+                case "-keyfile":
+                    key = readKey(value);
+                    break;
+                case "-hash":
+                    hash = value;
+                    break;
+                case "-count":
+                    count = Long.parseLong(value);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-in":
+                    in = value;
+                    break;
+                case "-out":
+                    out = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+            }
+        }
+        DomainParameters domain = DomainParameters.forName(curve);
+        if (hardened)
+            domain = domain.hardened();
+        BatchTool tool = new BatchTool(args[0], domain, key, hash, deterministic, binary);
+        if (args[0].equals("keygen") && count < 0)
+            throw new IllegalArgumentException("Missing -count.");
+        long start = System.nanoTime();
+        long records;
+        try (ReadableByteChannel input = in == null ? Channels.newChannel(System.in)
+                : FileChannel.open(Paths.get(in), StandardOpenOption.READ);
+                WritableByteChannel output = out == null ? Channels.newChannel(System.out)
+                        : FileChannel.open(Paths.get(out), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            records = tool.run(tool.dh == null ? new RecordReader(input, binary) : null, count, output, threads);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%s: %d records in %.2fs (%.0f/s)%n", args[0], records, seconds, records / seconds);
+    }
+
+    /**
+     * 读入、并行处理、按顺序写出
+     *
+     * @param reader  输入，为null时产生count条空记录
+     * @param count   reader为null时的记录数
+     * @param output  输出
+     * @param threads 线程数
+     * @return 处理的记录数
+     */
+    long run(RecordReader reader, long count, WritableByteChannel output, int threads) throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("Illegal thread count: " + threads);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        RecordWriter writer = new RecordWriter(output);
+        ArrayDeque<CompletableFuture<byte[][][]>> pending = new ArrayDeque<>();
+        // 最多同时在途的块数
+        int window = 4 * threads;
+        long index = 0;
+        try {
+            while (true) {
+                byte[][][] chunk = new byte[CHUNK][][];
+                int n = 0;
+                if (reader == null)
+                    for (; n < CHUNK && index + n < count; n++)
+                        chunk[n] = new byte[0][];
+                else
+                    try {
+                        for (byte[][] r; n < CHUNK && (r = reader.next(inputs)) != null; n++)
+                            chunk[n] = r;
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Record " + (index + n + 1) + ": " + e.getMessage(), e);
+                    }
+                if (n == 0)
+                    break;
+                byte[][][] records = chunk;
+                int size = n;
+                long first = index;
+                index += n;
+                if (pending.size() == window)
+                    write(writer, result(pending.poll()));
+                pending.add(CompletableFuture.supplyAsync(() -> process(records, size, first), pool));
+            }
+            while (!pending.isEmpty())
+                write(writer, result(pending.poll()));
+            writer.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+        return index;
+    }
+
+    /**
+     * 等待一块处理完，直接抛出处理时的异常
+     */
+    private static byte[][][] result(CompletableFuture<byte[][][]> task) {
+        try {
+            return task.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * 处理一块记录，出错时抛出带记录序号(从1开始)的IllegalArgumentException
+     */
+    private byte[][][] process(byte[][][] records, int size, long first) {
+        byte[][][] result = new byte[size][][];
+        // 密钥生成整块一起做，公钥共用一次求逆
+        if (dh != null) {
+            int len = (domain.getN().bitLength() + 7) / 8;
+            BigInteger[][] keys = dh.generate(size);
+            for (int i = 0; i < size; i++) {
+                ByteBuffer d = ByteBuffer.allocate(len);
+                Encoding.putUnsigned(d, keys[i][0], len);
+                result[i] = new byte[][] { d.array(), Encoding.encodePoint(domain.getCurve(),
+                        new BigInteger[] { keys[i][1], keys[i][2] }, true) };
+            }
+            return result;
+        }
+        for (int i = 0; i < size; i++) {
+            try {
+                result[i] = process(records[i]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Record " + (first + i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    private byte[][] process(byte[][] fields) {
+        switch (op) {
+            case "sign":
+                return new byte[][] { Encoding.encodeDER(signer.sign(ByteBuffer.wrap(fields[0]))) };
+            case "verify": {
+                // 签名来自不可信的输入，格式错误只是这一条验证不通过，不中断整个批处理
+                BigInteger[] s;
+                try {
+                    s = Encoding.decodeDER(fields[0]);
+                } catch (IllegalArgumentException e) {
+                    return new byte[][] { { 0 } };
+                }
+                boolean valid = verifier.verify(ByteBuffer.wrap(fields[1]), s[0], s[1]);
+                return new byte[][] { { (byte) (valid ? 1 : 0) } };
+            }
+            case "encrypt":
+                return new byte[][] { ecies.encrypt(publicKey, fields[0]) };
+            default:
+                return new byte[][] { ecies.decrypt(privateKey, fields[0]) };
+        }
+    }
+
+    private void write(RecordWriter writer, byte[][][] records) throws IOException {
+        for (byte[][] r : records) {
+            for (int i = 0; i < r.length; i++) {
+                if (binary) {
+                    writer.putInt(r[i].length);
+                    writer.put(r[i]);
+                    continue;
+                }
+                if (i > 0)
+                    writer.put((byte) ' ');
+                switch (outputs.charAt(i)) {
+                    case HEX_FIELD:
+                        writer.put(HEX.formatHex(r[i]).getBytes(StandardCharsets.US_ASCII));
+                        break;
+                    case BOOLEAN_FIELD:
+                        writer.put((r[i][0] != 0 ? "true" : "false").getBytes(StandardCharsets.US_ASCII));
+                        break;
+                    default:
+                        writer.put(r[i]);
+                }
+            }
+            if (!binary)
+                writer.put((byte) '\n');
+        }
+    }
+
+    /**
+     * 从通道读记录，读缓冲区放不下一条记录时扩大
+     */
+    static final class RecordReader {
+        private final ReadableByteChannel channel;
+        private final boolean binary;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER).flip();
+        private boolean eof;
+
+        RecordReader(ReadableByteChannel channel, boolean binary) {
+            this.channel = channel;
+            this.binary = binary;
+        }
+
+        /**
+         * 读一条记录
+         *
+         * @param types 每个字段的类型
+         * @return 各字段的内容，没有更多记录时返回null
+         */
+        byte[][] next(String types) throws IOException {
+            byte[][] fields = new byte[types.length()][];
+            if (binary) {
+                for (int i = 0; i < fields.length; i++) {
+                    if (!fill(4)) {
+                        if (i == 0 && !buffer.hasRemaining())
+                            return null;
+                        throw new IllegalArgumentException("Truncated record.");
+                    }
+                    int len = buffer.getInt();
+                    // 长度字段损坏时不按它分配内存
+                    if (len < 0 || len > MAX_FIELD)
+                        throw new IllegalArgumentException("Illegal field length: " + len);
+                    if (!fill(len))
+                        throw new IllegalArgumentException("Truncated record.");
+                    fields[i] = new byte[len];
+                    buffer.get(fields[i]);
+                }
+                return fields;
+            }
+            byte[] line = line();
+            if (line == null)
+                return null;
+            // 前面的字段以空格结束，最后一个字段为剩下的全部
+            int off = 0;
+            for (int i = 0; i < fields.length; i++) {
+                int end = line.length;
+                if (i < fields.length - 1) {
+                    end = off;
+                    while (end < line.length && line[end] != ' ')
+                        end++;
+                    if (end == line.length)
+                        throw new IllegalArgumentException("Expected " + fields.length + " fields.");
+                }
+                byte[] field = Arrays.copyOfRange(line, off, end);
+                fields[i] = types.charAt(i) == HEX_FIELD
+                        ? HEX.parseHex(new String(field, StandardCharsets.US_ASCII))
+                        : field;
+                off = end + 1;
+            }
+            return fields;
+        }
+
+        /**
+         * 读一行，去掉行尾的\n或\r\n，最后一行可以没有换行
+         */
+        private byte[] line() throws IOException {
+            int scanned = 0;
+            while (true) {
+                int start = buffer.position();
+                for (int i = start + scanned; i < buffer.limit(); i++) {
+                    if (buffer.get(i) != '\n')
+                        continue;
+                    int end = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                    byte[] line = new byte[end - start];
+                    buffer.get(line);
+                    buffer.position(i + 1);
+                    return line;
+                }
+                scanned = buffer.remaining();
+                if (scanned >= MAX_FIELD)
+                    throw new IllegalArgumentException("Line is too long.");
+                if (!fill(scanned + 1)) {
+                    if (!buffer.hasRemaining())
+                        return null;
+                    byte[] line = new byte[buffer.remaining()];
+                    buffer.get(line);
+                    return line;
+                }
+            }
+        }
+
+        /**
+         * 保证缓冲区中至少有n个字节
+         * 缓冲区满了才扩大，每次至多加倍，输入不足时占用的内存与实际读到的字节数相当
+         *
+         * @return 到达末尾仍不足n个字节时返回false
+         */
+        private boolean fill(int n) throws IOException {
+            while (buffer.remaining() < n && !eof) {
+                buffer.compact();
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer t = ByteBuffer.allocate((int) Math.min(n, 2L * buffer.capacity()));
+                    t.put(buffer.flip());
+                    buffer = t;
+                }
+                if (channel.read(buffer) < 0)
+                    eof = true;
+                buffer.flip();
+            }
+            return buffer.remaining() >= n;
+        }
+    }
+
+    /**
+     * 带缓冲区的通道输出
+     */
+    static final class RecordWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+
+        RecordWriter(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void put(byte b) throws IOException {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put(b);
+        }
+
+        void putInt(int v) throws IOException {
+            if (buffer.remaining() < 4)
+                flush();
+            buffer.putInt(v);
+        }
+
+        void put(byte[] b) throws IOException {
+            if (b.length > buffer.remaining()) {
+                flush();
+                // 比缓冲区大的直接写出
+                if (b.length > buffer.capacity()) {
+                    ByteBuffer t = ByteBuffer.wrap(b);
+                    while (t.hasRemaining())
+                        channel.write(t);
+                    return;
+                }
+            }
+            buffer.put(b);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * 性能测试
+ * 在几条标准曲线和p=257的小曲线上测量各个运算的吞吐量、延迟分位数和每次运算分配的内存
+ */
+public class Benchmark {
+    // 预热时间(毫秒)
+    private static final long WARMUP = 1000;
+    // 测量时间(毫秒)
+    private static final long MEASURE = 3000;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    /**
+     * p=257的小曲线参数：p, a, b, x_G, y_G, n
+     */
+    private static final String[] TOY = { "257", "0", "-4", "126", "107", "43" };
+
+    /**
+     * 用法：java [-Decc.metrics=true] Benchmark [曲线名...]，不指定时测试所有曲线
+     */
+    public static void main(String[] args) {
+        System.out.printf("%-10s %-26s %12s %10s %10s %10s %10s %12s %6s%n", "curve", "operation", "ops/s",
+                "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "bytes/op", "gc");
+        if (args.length == 0 || Arrays.asList(args).contains("toy-257"))
+            run("toy-257", DomainParameters.of(new BigInteger(TOY[0]), new BigInteger(TOY[1]), new BigInteger(TOY[2]),
+                    new BigInteger[] { new BigInteger(TOY[3]), new BigInteger(TOY[4]) }, new BigInteger(TOY[5])));
+        for (String name : DomainParameters.names())
+            if (args.length == 0 || Arrays.asList(args).contains(name))
+                run(name, DomainParameters.forName(name));
+        // -Decc.metrics=true时输出整个运行期间的统计
+        if (Metrics.ENABLED)
+            System.out.print(Metrics.get());
+    }
+
+    private static void run(String name, DomainParameters domain) {
+        BigInteger[] g = domain.getG();
+        BigInteger n = domain.getN();
+        SecureRandom random = new SecureRandom();
+
+        ECC ecc = domain.getCurve();
+        ECDSA ecdsa = new ECDSA(domain);
+        Encrypt encrypt = new Encrypt(domain);
+        DiffleHellman dh = new DiffleHellman(domain);
+        // 私钥d，公钥Q
+        BigInteger[] key = dh.generate();
+        BigInteger d = key[0];
+        BigInteger[] q = { key[1], key[2] };
+        BigInteger[] peer = dh.generate();
+        BigInteger[] pb = { peer[1], peer[2] };
+        BigInteger k = randomScalar(n, random);
+        BigInteger m = new BigInteger(256, random);
+        BigInteger[] signature = ecdsa.sign(m, d);
+        BigInteger[] message = ecc.multiply(randomScalar(n, random), g);
+        BigInteger[][] cipher = encrypt.encrypt(message, k, q);
+
+        measure(name, "ECC.add", () -> ecc.add(q, pb));
+        measure(name, "ECC.multiply", () -> ecc.multiply(k, q));
+        // 支持GLV的曲线对比不用自同态的wNAF
+        if (ecc.hasGLV())
+            measure(name, "ECC.multiplyNAF", () -> ecc.multiplyNAF(k, q, ECC.window(k.bitLength())));
+        measure(name, "ECC.multiplyConstantTime", () -> ecc.multiplyConstantTime(k, q));
+        measure(name, "ECDSA.sign", () -> ecdsa.sign(m, d));
+        measure(name, "ECDSA.signDeterministic", () -> ecdsa.signDeterministic(m, d));
+        ECDSA hardened = new ECDSA(domain.hardened());
+        measure(name, "ECDSA.sign(hardened)", () -> hardened.sign(m, d));
+        measure(name, "ECDSA.verify", () -> ecdsa.verify(m, signature[0], signature[1], q));
+        measure(name, "Encrypt.encrypt", () -> encrypt.encrypt(message, k, q));
+        measure(name, "Encrypt.decrypt", () -> encrypt.decrypt(cipher, d));
+        // 小曲线不能用于ECIES
+        if (n.bitLength() >= ECIES.MIN_ORDER_BITS) {
+            ECIES ecies = new ECIES(domain);
+            byte[] data = new byte[ECIES.CHUNK];
+            random.nextBytes(data);
+            byte[] sealed = ecies.encrypt(q, data);
+            measure(name, "ECIES.encrypt(64KiB)", () -> ecies.encrypt(q, data));
+            measure(name, "ECIES.decrypt(64KiB)", () -> ecies.decrypt(d, sealed));
+        }
+        measure(name, "DiffleHellman.secretKey", () -> dh.secretKey(d, pb));
+        // 命中；轮流使用比缓存容量多的私钥，每次都未命中但使用对方公钥的预计算表
+        DiffleHellman cached = new DiffleHellman(domain, new SecretCache(domain, 1024, 3_600_000));
+        measure(name, "SecretCache(hit)", () -> cached.secretKey(d, pb));
+        BigInteger[] keys = new BigInteger[4096];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = randomScalar(n, random);
+        int[] next = { 0 };
+        measure(name, "SecretCache(peer table)", () -> cached.secretKey(keys[next[0]++ & (keys.length - 1)], pb));
+        // 批量签名在1到N个线程上的吞吐量
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int t = 1; t < 2 * cores; t *= 2)
+            measureBulk(name, new Signer(domain, d), Math.min(t, cores), random);
+    }
+
+    /**
+     * 1<=k<=n-1的随机数
+     */
+    private static BigInteger randomScalar(BigInteger n, SecureRandom random) {
+        BigInteger k;
+        do {
+            k = new BigInteger(n.bitLength(), random);
+        } while (k.signum() == 0 || k.compareTo(n) >= 0);
+        return k;
+    }
+
+    /**
+     * 预热后测量一个运算，输出一行结果
+     */
+    private static void measure(String curve, String operation, Runnable op) {
+        long end = System.nanoTime() + WARMUP * 1_000_000;
+        while (System.nanoTime() < end)
+            op.run();
+
+        long[] latency = new long[1 << 16];
+        int count = 0;
+        long thread = Thread.currentThread().getId();
+        long gcBefore = gcCount();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        end = start + MEASURE * 1_000_000;
+        long now = start;
+        while (now < end) {
+            op.run();
+            long t = System.nanoTime();
+            if (count == latency.length)
+                latency = Arrays.copyOf(latency, count * 2);
+            latency[count++] = t - now;
+            now = t;
+        }
+        long bytes = THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+        long gc = gcCount() - gcBefore;
+
+        Arrays.sort(latency, 0, count);
+        System.out.printf("%-10s %-26s %12.1f %10.1f %10.1f %10.1f %10.1f %12d %6d%n", curve, operation,
+                count * 1e9 / (now - start), percentile(latency, count, 0.5), percentile(latency, count, 0.9),
+                percentile(latency, count, 0.99), percentile(latency, count, 0.999), bytes / count, gc);
+    }
+
+    /**
+     * 测量BulkSigner在parallelism个线程上每秒签名的消息数，每批1024条
+     */
+    private static void measureBulk(String curve, Signer signer, int parallelism, SecureRandom random) {
+        BigInteger[] m = new BigInteger[1024];
+        for (int i = 0; i < m.length; i++)
+            m[i] = new BigInteger(256, random);
+        try (BulkSigner bulk = new BulkSigner(signer, parallelism)) {
+            long end = System.nanoTime() + WARMUP * 1_000_000;
+            while (System.nanoTime() < end)
+                bulk.signAll(m);
+            long count = 0;
+            long start = System.nanoTime();
+            end = start + MEASURE * 1_000_000;
+            long now = start;
+            while (now < end) {
+                bulk.signAll(m);
+                count += m.length;
+                now = System.nanoTime();
+            }
+            System.out.printf("%-10s %-26s %12.1f%n", curve, "BulkSigner(" + parallelism + ")", count * 1e9 / (now - start));
+        }
+    }
+
+    /**
+     * 排好序的延迟的分位数(微秒)
+     */
+    private static double percentile(long[] sorted, int count, double q) {
+        return sorted[Math.min(count - 1, (int) Math.ceil(q * count) - 1)] / 1e3;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+}
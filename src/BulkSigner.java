@@ -0,0 +1,136 @@
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * 批量并行签名
+ * 在自己的ForkJoinPool上按块分配消息，签名结果与输入顺序一致。
+ * 流式签名时在途的块数有上限，读入速度不会超过签名速度
+ */
+public final class BulkSigner implements AutoCloseable {
+    // 每个任务签名的消息数
+    private static final int CHUNK = 64;
+
+    private final Signer signer;
+    private final ForkJoinPool pool;
+    // 流式签名时最多同时在途的块数
+    private final int window;
+
+    /**
+     * 使用所有处理器
+     *
+     * @param signer 签名对象
+     */
+    public BulkSigner(Signer signer) {
+        this(signer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param signer      签名对象
+     * @param parallelism 并行的线程数
+     */
+    public BulkSigner(Signer signer, int parallelism) {
+        this(signer, parallelism, 4 * parallelism);
+    }
+
+    /**
+     * @param signer      签名对象
+     * @param parallelism 并行的线程数
+     * @param window      流式签名时最多同时在途的块数，每块CHUNK条消息
+     */
+    public BulkSigner(Signer signer, int parallelism, int window) {
+        if (parallelism < 1 || window < 1)
+            throw new IllegalArgumentException();
+        this.signer = signer;
+        this.pool = new ForkJoinPool(parallelism);
+        this.window = window;
+    }
+
+    /**
+     * 对所有消息签名
+     *
+     * @param m 消息
+     * @return 第i行为m[i]的签名r, s
+     */
+    public BigInteger[][] signAll(BigInteger[] m) {
+        BigInteger[][] result = new BigInteger[m.length][];
+        pool.invoke(new SignTask(m, result, 0, m.length));
+        return result;
+    }
+
+    /**
+     * 流式签名，按输入顺序在调用线程上把签名交给out
+     * 在途的块达到上限时先等最早的块完成再继续读入
+     *
+     * @param messages 消息
+     * @param out      接收签名r, s
+     */
+    public void signAll(Iterable<BigInteger> messages, Consumer<BigInteger[]> out) {
+        ArrayDeque<ForkJoinTask<BigInteger[][]>> pending = new ArrayDeque<>();
+        Iterator<BigInteger> it = messages.iterator();
+        while (it.hasNext()) {
+            BigInteger[] chunk = new BigInteger[CHUNK];
+            int count = 0;
+            while (count < CHUNK && it.hasNext())
+                chunk[count++] = it.next();
+            BigInteger[] m = count == CHUNK ? chunk : Arrays.copyOf(chunk, count);
+            if (pending.size() == window)
+                emit(pending.poll().join(), out);
+            pending.add(pool.submit(() -> sign(m)));
+        }
+        while (!pending.isEmpty())
+            emit(pending.poll().join(), out);
+    }
+
+    private BigInteger[][] sign(BigInteger[] m) {
+        BigInteger[][] result = new BigInteger[m.length][];
+        for (int i = 0; i < m.length; i++)
+            result[i] = signer.sign(m[i]);
+        return result;
+    }
+
+    private static void emit(BigInteger[][] signatures, Consumer<BigInteger[]> out) {
+        for (BigInteger[] s : signatures)
+            out.accept(s);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * 对m[from, to)签名，超过CHUNK条时二分
+     */
+    private class SignTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BigInteger[] m;
+        private final BigInteger[][] result;
+        private final int from;
+        private final int to;
+
+        SignTask(BigInteger[] m, BigInteger[][] result, int from, int to) {
+            this.m = m;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++)
+                    result[i] = signer.sign(m[i]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SignTask(m, result, from, mid), new SignTask(m, result, mid, to));
+        }
+    }
+}
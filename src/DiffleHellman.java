@@ -3,12 +3,16 @@ import java.security.SecureRandom;
 import java.util.Scanner;
 
 public class DiffleHellman {
+    // 该系统的参数
+    private final DomainParameters domain;
     // 该系统的椭圆曲线
     private final ECC ecc;
     // 基点的阶
     private final BigInteger n;
     // 基点
     private final BigInteger[] g;
+    // 秘密钥缓存，不使用时为null
+    private final SecretCache cache;
 
     /**
      * 构造一个密钥交换系统
@@ -20,18 +24,32 @@ public class DiffleHellman {
      * @param n 基点G的阶（要求是素数）
      */
     public DiffleHellman(BigInteger q, BigInteger a, BigInteger b, BigInteger[] g, BigInteger n) {
-        ecc = new ECC(q, a, b);
-        // G不在曲线上
-        if (!ecc.exist(g))
-            throw new IllegalArgumentException();
-        // n不是素数
-        if (!n.isProbablePrime((int) (n.bitLength() * 0.7)))
-            throw new IllegalArgumentException();
-        // n不是G的阶
-        if (!ECC.isZero(ecc.multiply(n, g)))
+        this(DomainParameters.of(q, a, b, g, n));
+    }
+
+    /**
+     * 用已检查过的参数构造一个密钥交换系统
+     *
+     * @param domain 椭圆曲线参数
+     */
+    public DiffleHellman(DomainParameters domain) {
+        this(domain, null);
+    }
+
+    /**
+     * 用已检查过的参数构造一个密钥交换系统，秘密钥经过缓存
+     *
+     * @param domain 椭圆曲线参数
+     * @param cache  秘密钥缓存，要使用同样的参数，为null时不缓存
+     */
+    public DiffleHellman(DomainParameters domain, SecretCache cache) {
+        if (cache != null && cache.getDomain() != domain)
             throw new IllegalArgumentException();
-        this.g = g;
-        this.n = n;
+        this.cache = cache;
+        this.domain = domain;
+        this.ecc = domain.getCurve();
+        this.g = domain.getG();
+        this.n = domain.getN();
     }
 
     /**
@@ -40,17 +58,43 @@ public class DiffleHellman {
      * @return 私钥n，公钥P
      */
     public BigInteger[] generate() {
-        SecureRandom secureRandom = new SecureRandom();
+        SecureRandom secureRandom = ECDSA.random();
         BigInteger na;
         do {
             // 0 < na < n
             na = new BigInteger(n.bitLength(), secureRandom);
-        } while (na.compareTo(n) < 0 && !na.equals(BigInteger.ONE));
+        } while (na.compareTo(n) >= 0 || na.signum() == 0);
         // Pa = na*G
-        BigInteger[] pa = ecc.multiply(na, g);
+        BigInteger[] pa = multiplyG(na);
         return new BigInteger[] { na, pa[0], pa[1] };
     }
 
+    /**
+     * 批量产生密钥，所有公钥共用一次求逆
+     *
+     * @param count 密钥个数
+     * @return 每一行为私钥n，公钥P
+     */
+    public BigInteger[][] generate(int count) {
+        SecureRandom secureRandom = ECDSA.random();
+        Field f = ecc.field();
+        BigInteger[] na = new BigInteger[count];
+        JacobianPoint[] pa = new JacobianPoint[count];
+        for (int i = 0; i < count; i++) {
+            do {
+                // 0 < na < n
+                na[i] = new BigInteger(n.bitLength(), secureRandom);
+            } while (na[i].compareTo(n) >= 0 || na[i].signum() == 0);
+            // Pa = na*G(Jacobian坐标)
+            pa[i] = domain.multiplyGJacobian(f, na[i]);
+        }
+        BigInteger[][] affine = ecc.toAffineAll(f, pa);
+        BigInteger[][] keys = new BigInteger[count][];
+        for (int i = 0; i < count; i++)
+            keys[i] = new BigInteger[] { na[i], affine[i][0], affine[i][1] };
+        return keys;
+    }
+
     /**
      * 计算秘密钥
      * 
@@ -59,8 +103,19 @@ public class DiffleHellman {
      * @return 秘密钥K
      */
     public BigInteger[] secretKey(BigInteger na, BigInteger[] pb) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         // K=na*Pb
-        return ecc.multiply(na, pb);
+        BigInteger[] k = cache != null ? cache.secretKey(na, pb) : domain.multiply(na, pb);
+        if (Metrics.ENABLED)
+            Metrics.KEY_AGREEMENT.record(System.nanoTime() - start);
+        return k;
+    }
+
+    /**
+     * 计算kG
+     */
+    private BigInteger[] multiplyG(BigInteger k) {
+        return domain.multiplyG(k);
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,246 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 椭圆曲线的全局参数q, a, b, G, n
+ * 构造时检查一次参数，同样的参数只构造一次并缓存起来，
+ * 基点的预计算表也由使用这组参数的所有对象共用。
+ * 缓存按最近使用淘汰，最多保留CACHE_SIZE组，参数来自外部输入时内存不会一直增长；
+ * 标准曲线另外保存，不会被淘汰
+ */
+public final class DomainParameters {
+    /**
+     * 标准曲线参数(十六进制)：名称, p, a, b, x_G, y_G, n
+     */
+    private static final String[][] NAMED = {
+            { "P-256",
+                    "ffffffff00000001000000000000000000000000ffffffffffffffffffffffff",
+                    "ffffffff00000001000000000000000000000000fffffffffffffffffffffffc",
+                    "5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b",
+                    "6b17d1f2e12c4247f8bce6e563a440f277037d812deb33a0f4a13945d898c296",
+                    "4fe342e2fe1a7f9b8ee7eb4a7c0f9e162bce33576b315ececbb6406837bf51f5",
+                    "ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551" },
+            { "P-384",
+                    "fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffeffffffff0000000000000000ffffffff",
+                    "fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffeffffffff0000000000000000fffffffc",
+                    "b3312fa7e23ee7e4988e056be3f82d19181d9c6efe8141120314088f5013875ac656398d8a2ed19d2a85c8edd3ec2aef",
+                    "aa87ca22be8b05378eb1c71ef320ad746e1d3b628ba79b9859f741e082542a385502f25dbf55296c3a545e3872760ab7",
+                    "3617de4a96262c6f5d9e98bf9292dc29f8f41dbd289a147ce9da3113b5f0b8c00a60b1ce1d7e819d7a431d7c90ea0e5f",
+                    "ffffffffffffffffffffffffffffffffffffffffffffffffc7634d81f4372ddf581a0db248b0a77aecec196accc52973" },
+            { "P-521",
+                    "01ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                    "01fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffc",
+                    "0051953eb9618e1c9a1f929a21a0b68540eea2da725b99b315f3b8b489918ef109e156193951ec7e937b1652c0bd3bb1bf073573df883d2c34f1ef451fd46b503f00",
+                    "00c6858e06b70404e9cd9e3ecb662395b4429c648139053fb521f828af606b4d3dbaa14b5e77efe75928fe1dc127a2ffa8de3348b3c1856a429bf97e7e31c2e5bd66",
+                    "011839296a789a3bc0045c8a5fb42c7d1bd998f54449579b446817afbd17273e662c97ee72995ef42640c550b9013fad0761353c7086a272c24088be94769fd16650",
+                    "01fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffa51868783bf2f966b7fcc0148f709a5d03bb5c9b8899c47aebb6fb71e91386409" },
+            { "secp256k1",
+                    "fffffffffffffffffffffffffffffffffffffffffffffffffffffffefffffc2f",
+                    "0",
+                    "7",
+                    "79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798",
+                    "483ada7726a3c4655da4fbfc0e1108a8fd17b448a68554199c47d08ffb10d4b8",
+                    "fffffffffffffffffffffffffffffffebaaedce6af48a03bbfd25e8cd0364141" } };
+
+    // 用过的标准曲线，最多NAMED.length组
+    private static final ConcurrentHashMap<List<BigInteger>, DomainParameters> PINNED = new ConcurrentHashMap<>();
+    // 缓存的参数组数
+    private static final int CACHE_SIZE = 64;
+    // 已检查过的参数，键为(p, a, b, x_G, y_G, n)，按访问顺序排列
+    private static final LinkedHashMap<List<BigInteger>, DomainParameters> CACHE = new LinkedHashMap<>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<BigInteger>, DomainParameters> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    // 椭圆曲线
+    private final ECC ecc;
+    // 基点
+    private final BigInteger[] g;
+    // 基点的阶
+    private final BigInteger n;
+    // 基点的预计算表
+    private volatile FixedBaseComb comb;
+    // 是否对秘密的倍数使用抗侧信道的数乘
+    private final boolean hardened;
+    // 同样参数的抗侧信道模式
+    private volatile DomainParameters hardenedView;
+
+    private DomainParameters(BigInteger q, BigInteger a, BigInteger b, BigInteger[] g, BigInteger n) {
+        ecc = new ECC(q, a, b);
+        // G不在曲线上
+        if (!ecc.exist(g) || ECC.isZero(g))
+            throw new IllegalArgumentException();
+        // n不是素数
+        if (!n.isProbablePrime((int) (n.bitLength() * 0.7)))
+            throw new IllegalArgumentException();
+        // n不是G的阶
+        if (!ECC.isZero(ecc.multiply(n, g)))
+            throw new IllegalArgumentException();
+        this.g = g.clone();
+        this.n = n;
+        this.hardened = false;
+        // a=0且余因子为1的曲线(如secp256k1)使用GLV加速数乘
+        ecc.setGLV(GLV.of(ecc, this.g, n));
+    }
+
+    /**
+     * 抗侧信道模式，与fast共用曲线
+     */
+    private DomainParameters(DomainParameters fast) {
+        this.ecc = fast.ecc;
+        this.g = fast.g;
+        this.n = fast.n;
+        this.hardened = true;
+    }
+
+    /**
+     * 取得一组参数，第一次使用时检查参数，以后直接返回缓存的对象
+     *
+     * @param q 椭圆曲线参数q
+     * @param a 椭圆曲线参数a
+     * @param b 椭圆曲线参数b
+     * @param g 基点G
+     * @param n 基点G的阶（要求是素数）
+     */
+    public static DomainParameters of(BigInteger q, BigInteger a, BigInteger b, BigInteger[] g, BigInteger n) {
+        // a, b模q相同的参数是同一条曲线
+        a = a.mod(q);
+        b = b.mod(q);
+        List<BigInteger> key = Arrays.asList(q, a, b, g[0], g[1], n);
+        DomainParameters t = PINNED.get(key);
+        if (t != null)
+            return t;
+        synchronized (CACHE) {
+            t = CACHE.get(key);
+        }
+        if (t != null)
+            return t;
+        // 检查参数较慢，不持有锁；并发时可能重复构造，只保留先放入的一个
+        t = new DomainParameters(q, a, b, g, n);
+        synchronized (CACHE) {
+            DomainParameters old = CACHE.putIfAbsent(key, t);
+            return old != null ? old : t;
+        }
+    }
+
+    /**
+     * 按名称取得标准曲线的参数
+     *
+     * @param name P-256, P-384, P-521或secp256k1
+     */
+    public static DomainParameters forName(String name) {
+        for (String[] c : NAMED)
+            if (c[0].equalsIgnoreCase(name)) {
+                BigInteger[] g = { new BigInteger(c[4], 16), new BigInteger(c[5], 16) };
+                List<BigInteger> key = Arrays.asList(new BigInteger(c[1], 16), new BigInteger(c[2], 16),
+                        new BigInteger(c[3], 16), g[0], g[1], new BigInteger(c[6], 16));
+                return PINNED.computeIfAbsent(key, k -> of(k.get(0), k.get(1), k.get(2), g, k.get(5)));
+            }
+        throw new IllegalArgumentException("Unknown curve: " + name);
+    }
+
+    /**
+     * 所有标准曲线的名称
+     */
+    public static String[] names() {
+        String[] names = new String[NAMED.length];
+        for (int i = 0; i < NAMED.length; i++)
+            names[i] = NAMED[i][0];
+        return names;
+    }
+
+    /**
+     * 同样参数的抗侧信道模式
+     * 使用这个对象的签名、密钥交换和加解密对私钥和随机数k使用ECC.multiplyConstantTime，
+     * 不使用以秘密的倍数查表的预计算表；公开的倍数(如验证签名)仍使用快速算法
+     */
+    public DomainParameters hardened() {
+        if (hardened)
+            return this;
+        DomainParameters t = hardenedView;
+        // 并发时可能重复构造，但对象是不可变的，不影响结果
+        if (t == null)
+            hardenedView = t = new DomainParameters(this);
+        return t;
+    }
+
+    public boolean isHardened() {
+        return hardened;
+    }
+
+    public ECC getCurve() {
+        return ecc;
+    }
+
+    public BigInteger[] getG() {
+        return g.clone();
+    }
+
+    public BigInteger getN() {
+        return n;
+    }
+
+    /**
+     * 计算kG
+     */
+    public BigInteger[] multiplyG(BigInteger k) {
+        k = k.mod(n);
+        if (hardened)
+            return ecc.multiplyConstantTime(k, g);
+        if (k.signum() == 0)
+            return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+        return comb().multiply(k);
+    }
+
+    /**
+     * Jacobian坐标下的kG
+     */
+    JacobianPoint multiplyGJacobian(Field f, BigInteger k) {
+        if (hardened)
+            return ecc.toJacobian(f, ecc.multiplyConstantTime(k.mod(n), g));
+        return comb().multiplyJacobian(f, k.mod(n));
+    }
+
+    /**
+     * 计算kC，k为私钥或随机数，抗侧信道模式下使用Montgomery阶梯
+     * 两种模式对k的要求相同，都以阶梯能处理的范围为准
+     *
+     * @param k 倍数，0 < k < 2^(p的位数+1)
+     * @param c 点的坐标
+     * @return 结果坐标
+     */
+    public BigInteger[] multiply(BigInteger k, BigInteger[] c) {
+        checkMultiplier(k);
+        if (hardened)
+            return ecc.multiplyConstantTime(k, c);
+        return ecc.multiply(k, c);
+    }
+
+    /**
+     * 检查multiply的倍数，0 < k < 2^(p的位数+1)
+     */
+    void checkMultiplier(BigInteger k) {
+        if (k.signum() <= 0 || k.bitLength() > ecc.getP().bitLength() + 1)
+            throw new IllegalArgumentException();
+    }
+
+    /**
+     * G的预计算表，第一次使用时构造
+     */
+    private FixedBaseComb comb() {
+        FixedBaseComb t = comb;
+        // 并发时可能重复构造，但表是不可变的，不影响结果
+        if (t == null)
+            comb = t = new FixedBaseComb(ecc, g, n.bitLength());
+        return t;
+    }
+}
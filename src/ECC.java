@@ -1,4 +1,7 @@
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
 
 /**
  * 素数域椭圆曲线
@@ -7,6 +10,21 @@ public class ECC {
     private final BigInteger p;
     private final BigInteger a;
     private final BigInteger b;
+    // 每个线程一个域运算对象，数乘等内部运算都在域表示下进行
+    private final ThreadLocal<Field> fields;
+    // 域表示下的参数a和3b，完备加法公式使用
+    private final int[] aField;
+    private final int[] b3Field;
+    // a=0或a=-3时倍点可以少做乘法
+    private final boolean aIsZero;
+    private final boolean aIsMinus3;
+    // GLV自同态，由DomainParameters在确认余因子为1后设置，不支持时为null
+    private volatile GLV glv;
+
+    // 批量转仿射坐标时每批的点数
+    private static final int BATCH = 1024;
+    // 小步大步法的小步数上限为2^20
+    private static final int MAX_BABY_STEPS_BITS = 20;
 
     public ECC(BigInteger p, BigInteger a, BigInteger b) {
         // (4a^3 + 27b^3) mod p != 0
@@ -16,6 +34,23 @@ public class ECC {
         this.p = p;
         this.a = a;
         this.b = b;
+        this.fields = ThreadLocal.withInitial(() -> Field.of(p));
+        this.aField = field().fromBigInteger(a);
+        this.b3Field = field().fromBigInteger(b.multiply(BigInteger.valueOf(3)));
+        this.aIsZero = a.mod(p).signum() == 0;
+        this.aIsMinus3 = a.mod(p).equals(p.subtract(BigInteger.valueOf(3)));
+    }
+
+    public BigInteger getP() {
+        return p;
+    }
+
+    public BigInteger getA() {
+        return a;
+    }
+
+    public BigInteger getB() {
+        return b;
     }
 
     /**
@@ -29,6 +64,79 @@ public class ECC {
                 .equals(c[0].modPow(BigInteger.valueOf(3), p).add(a.multiply(c[0])).add(b).mod(p));
     }
 
+    /**
+     * 模p的平方根
+     * p≡3 (mod 4)时直接求x^((p+1)/4)，否则用Tonelli-Shanks算法
+     *
+     * @param x 被开方数
+     * @return x的一个平方根，x不是二次剩余时返回null
+     */
+    public BigInteger sqrt(BigInteger x) {
+        x = x.mod(p);
+        if (x.signum() == 0)
+            return BigInteger.ZERO;
+        if (p.testBit(1)) {
+            BigInteger r = x.modPow(p.add(BigInteger.ONE).shiftRight(2), p);
+            return r.multiply(r).mod(p).equals(x) ? r : null;
+        }
+        if (legendre(x) != 1)
+            return null;
+        BigInteger half = p.shiftRight(1);
+        // p-1=q*2^s，q为奇数
+        int s = p.subtract(BigInteger.ONE).getLowestSetBit();
+        BigInteger q = p.shiftRight(s);
+        // 找一个二次非剩余z
+        BigInteger z = BigInteger.TWO;
+        while (z.modPow(half, p).equals(BigInteger.ONE))
+            z = z.add(BigInteger.ONE);
+        BigInteger c = z.modPow(q, p);
+        BigInteger r = x.modPow(q.add(BigInteger.ONE).shiftRight(1), p);
+        BigInteger t = x.modPow(q, p);
+        int m = s;
+        while (!t.equals(BigInteger.ONE)) {
+            // 最小的i使t^(2^i)=1
+            int i = 0;
+            for (BigInteger u = t; !u.equals(BigInteger.ONE); i++)
+                u = u.multiply(u).mod(p);
+            // b=c^(2^(m-i-1))
+            BigInteger b = c;
+            for (int j = 0; j < m - i - 1; j++)
+                b = b.multiply(b).mod(p);
+            r = r.multiply(b).mod(p);
+            c = b.multiply(b).mod(p);
+            t = t.multiply(c).mod(p);
+            m = i;
+        }
+        return r;
+    }
+
+    /**
+     * Legendre符号(x/p)，用二次互反律计算Jacobi符号，不需要模幂
+     *
+     * @param x 整数
+     * @return x为非零二次剩余时为1，非二次剩余时为-1，x≡0时为0
+     */
+    public int legendre(BigInteger x) {
+        BigInteger a = x.mod(p);
+        BigInteger m = p;
+        int t = 1;
+        while (a.signum() != 0) {
+            // 提出a中的2，(2/m)=-1当且仅当m≡3,5 (mod 8)
+            int s = a.getLowestSetBit();
+            a = a.shiftRight(s);
+            int m8 = m.intValue() & 7;
+            if ((s & 1) == 1 && (m8 == 3 || m8 == 5))
+                t = -t;
+            // 互反律：a≡m≡3 (mod 4)时变号
+            if ((a.intValue() & 3) == 3 && (m8 & 3) == 3)
+                t = -t;
+            BigInteger r = m.mod(a);
+            m = a;
+            a = r;
+        }
+        return m.equals(BigInteger.ONE) ? t : 0;
+    }
+
     /**
      * 求负元
      */
@@ -56,6 +164,10 @@ public class ECC {
             // 如果ya=yb=0，则a+b=o
             if (pa[1].equals(BigInteger.ZERO))
                 return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+            if (Metrics.ENABLED) {
+                Metrics.POINT_DOUBLINGS.increment();
+                Metrics.FIELD_INVERSIONS.increment();
+            }
             // k=(3 * xa^2 + a)/(2ya) mod p
             k = BigInteger.valueOf(3).multiply(pa[0].modPow(BigInteger.TWO, p)).add(a)
                     .multiply(BigInteger.TWO.multiply(pa[1]).modInverse(p)).mod(p);
@@ -64,9 +176,14 @@ public class ECC {
         else if (pa[0].equals(pb[0]))
             return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
         // 点a和点b不同
-        else
+        else {
+            if (Metrics.ENABLED) {
+                Metrics.POINT_ADDITIONS.increment();
+                Metrics.FIELD_INVERSIONS.increment();
+            }
             // k=(yb-ya)/(xb-xa) mod p
             k = pb[1].subtract(pa[1]).multiply(pb[0].subtract(pa[0]).modInverse(p)).mod(p);
+        }
         BigInteger[] pc = new BigInteger[2];
         // xc=k^2−xa−xb mod p
         pc[0] = k.modPow(BigInteger.TWO, p).subtract(pa[0]).subtract(pb[0]).mod(p);
@@ -87,51 +204,938 @@ public class ECC {
     }
 
     /**
-     * 椭圆曲线上点的数乘(递归)
+     * 椭圆曲线上点的数乘
+     * 内部使用Jacobian坐标，只在最后做一次求逆；曲线支持GLV时把k分成两半同时计算
      *
      * @param k 倍数
      * @param c 点的坐标
      * @return 结果坐标
      */
     public BigInteger[] multiply(BigInteger k, BigInteger[] c) {
-        if (k.compareTo(BigInteger.ZERO) <= 0)
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        BigInteger[] r;
+        GLV t = glv;
+        if (t == null || k.signum() <= 0)
+            r = multiplyNAF(k, c, window(k.bitLength()));
+        else {
+            Field f = field();
+            r = toAffine(f, t.multiplyJacobian(f, k, toJacobian(f, c)));
+        }
+        if (Metrics.ENABLED)
+            Metrics.MULTIPLY.record(System.nanoTime() - start);
+        return r;
+    }
+
+    /**
+     * 是否使用GLV自同态加速
+     */
+    public boolean hasGLV() {
+        return glv != null;
+    }
+
+    void setGLV(GLV glv) {
+        this.glv = glv;
+    }
+
+    /**
+     * 椭圆曲线上点的数乘(宽度为w的NAF，迭代)
+     *
+     * @param k 倍数
+     * @param c 点的坐标
+     * @param w 窗口宽度(2 <= w <= 8)
+     * @return 结果坐标
+     */
+    public BigInteger[] multiplyNAF(BigInteger k, BigInteger[] c, int w) {
+        if (k.compareTo(BigInteger.ZERO) <= 0 || w < 2 || w > 8)
             throw new IllegalArgumentException();
-        // 如果k=1
-        else if (k.equals(BigInteger.ONE))
-            return c;
-        // 如果k=2
-        else if (k.equals(BigInteger.TWO))
-            // 返回c + c
-            return this.add(c, c);
-        // 如果k>2
-        else
-        // 如果k为偶数
-        if (k.mod(BigInteger.TWO).equals(BigInteger.ZERO))
-            // 返回2 * (k/2 * c)
-            return this.multiply(BigInteger.TWO, this.multiply(k.divide(BigInteger.TWO), c));
-        // 如果k为奇数
+        Field f = field();
+        return toAffine(f, multiplyJacobian(f, k, toJacobian(f, c), w));
+    }
+
+    /**
+     * Jacobian坐标下的wNAF数乘
+     */
+    JacobianPoint multiplyJacobian(Field f, BigInteger k, JacobianPoint c, int w) {
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        int[] naf = naf(k, w);
+        // 预计算c, 3c, 5c, ..., (2^(w-1)-1)c，批量转为仿射坐标以便使用混合加法
+        int[][][] table = normalizeAll(f, oddMultiples(f, c, 1 << (w - 2)));
+        JacobianPoint q = new JacobianPoint(f);
+        for (int i = naf.length - 1; i >= 0; i--) {
+            twiceInto(f, q, q);
+            if (naf[i] > 0)
+                addMixedInto(f, q, q, table[naf[i] >> 1], false);
+            else if (naf[i] < 0)
+                addMixedInto(f, q, q, table[-naf[i] >> 1], true);
+        }
+        return q;
+    }
+
+    /**
+     * 抗侧信道的数乘(Montgomery阶梯)
+     * 在射影坐标下使用Renes-Costello-Batina的完备加法和倍点公式，零点和相等的点不需要特殊处理；
+     * 迭代次数只取决于p的位数，每一位都做一次加法和一次倍点，用条件交换代替分支，
+     * 最后用费马小定理求逆。适用于k为私钥或随机数的场合，曲线的阶要为奇数
+     * 代价约为multiply的2到4倍(P-256约3倍，a=0的secp256k1约4倍)
+     *
+     * @param k 倍数，0 <= k < 2^(p的位数+1)
+     * @param c 点的坐标
+     * @return 结果坐标
+     */
+    public BigInteger[] multiplyConstantTime(BigInteger k, BigInteger[] c) {
+        int bits = p.bitLength() + 1;
+        if (k.signum() < 0 || k.bitLength() > bits)
+            throw new IllegalArgumentException();
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        Field f = field();
+        int[] mag = Field.toLimbs(k, (bits + 31) / 32);
+        // t0~t5和结果X3, Y3, Z3
+        int[][] t = new int[9][f.len];
+        // R0=O=(0:1:0)，R1=c
+        int[][] r0 = { f.create(), f.one.clone(), f.create() };
+        int[][] r1 = isZero(c) ? new int[][] { f.create(), f.one.clone(), f.create() }
+                : new int[][] { f.fromBigInteger(c[0]), f.fromBigInteger(c[1]), f.one.clone() };
+        // 保持R1-R0=c，第i位为1时R0=R0+R1, R1=2R1，否则R1=R0+R1, R0=2R0
+        int swap = 0;
+        for (int i = bits - 1; i >= 0; i--) {
+            int bit = (mag[i >>> 5] >>> (i & 31)) & 1;
+            cswap(f, r0, r1, swap ^ bit);
+            swap = bit;
+            completeAdd(f, r1, r0, r1, t);
+            completeTwice(f, r0, r0, t);
+        }
+        cswap(f, r0, r1, swap);
+        // 只泄露结果是否为零点
+        if (f.isZero(r0[2]))
+            return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+        // x=X/Z, y=Y/Z
+        int[] zInv = t[0];
+        invert(f, zInv, r0[2]);
+        f.mul(r0[0], r0[0], zInv);
+        f.mul(r0[1], r0[1], zInv);
+        return new BigInteger[] { f.toBigInteger(r0[0]), f.toBigInteger(r0[1]) };
+    }
+
+    /**
+     * bit为1时交换射影坐标的点a和b
+     */
+    private static void cswap(Field f, int[][] a, int[][] b, int bit) {
+        for (int i = 0; i < 3; i++)
+            f.cswap(a[i], b[i], bit);
+    }
+
+    /**
+     * 射影坐标下的完备加法r=pa+pb(RCB算法1)，对零点和pa=pb都成立，r可以是pa或pb
+     */
+    private void completeAdd(Field f, int[][] r, int[][] pa, int[][] pb, int[][] t) {
+        if (Metrics.ENABLED)
+            Metrics.POINT_ADDITIONS.increment();
+        int[] t0 = t[0], t1 = t[1], t2 = t[2], t3 = t[3], t4 = t[4], t5 = t[5];
+        int[] x3 = t[6], y3 = t[7], z3 = t[8];
+        f.mul(t0, pa[0], pb[0]);
+        f.mul(t1, pa[1], pb[1]);
+        f.mul(t2, pa[2], pb[2]);
+        f.add(t3, pa[0], pa[1]);
+        f.add(t4, pb[0], pb[1]);
+        f.mul(t3, t3, t4);
+        f.add(t4, t0, t1);
+        f.sub(t3, t3, t4);
+        f.add(t4, pa[0], pa[2]);
+        f.add(t5, pb[0], pb[2]);
+        f.mul(t4, t4, t5);
+        f.add(t5, t0, t2);
+        f.sub(t4, t4, t5);
+        f.add(t5, pa[1], pa[2]);
+        f.add(x3, pb[1], pb[2]);
+        f.mul(t5, t5, x3);
+        f.add(x3, t1, t2);
+        f.sub(t5, t5, x3);
+        f.mul(z3, aField, t4);
+        f.mul(x3, b3Field, t2);
+        f.add(z3, x3, z3);
+        f.sub(x3, t1, z3);
+        f.add(z3, t1, z3);
+        f.mul(y3, x3, z3);
+        f.add(t1, t0, t0);
+        f.add(t1, t1, t0);
+        f.mul(t2, aField, t2);
+        f.mul(t4, b3Field, t4);
+        f.add(t1, t1, t2);
+        f.sub(t2, t0, t2);
+        f.mul(t2, aField, t2);
+        f.add(t4, t4, t2);
+        f.mul(t0, t1, t4);
+        f.add(y3, y3, t0);
+        f.mul(t0, t5, t4);
+        f.mul(x3, t3, x3);
+        f.sub(x3, x3, t0);
+        f.mul(t0, t3, t1);
+        f.mul(z3, z3, t5);
+        f.add(z3, z3, t0);
+        f.set(r[0], x3);
+        f.set(r[1], y3);
+        f.set(r[2], z3);
+    }
+
+    /**
+     * 射影坐标下的完备倍点r=2c(RCB算法3)，r可以是c
+     */
+    private void completeTwice(Field f, int[][] r, int[][] c, int[][] t) {
+        if (Metrics.ENABLED)
+            Metrics.POINT_DOUBLINGS.increment();
+        int[] t0 = t[0], t1 = t[1], t2 = t[2], t3 = t[3];
+        int[] x3 = t[6], y3 = t[7], z3 = t[8];
+        f.sqr(t0, c[0]);
+        f.sqr(t1, c[1]);
+        f.sqr(t2, c[2]);
+        f.mul(t3, c[0], c[1]);
+        f.add(t3, t3, t3);
+        f.mul(z3, c[0], c[2]);
+        f.add(z3, z3, z3);
+        f.mul(x3, aField, z3);
+        f.mul(y3, b3Field, t2);
+        f.add(y3, x3, y3);
+        f.sub(x3, t1, y3);
+        f.add(y3, t1, y3);
+        f.mul(y3, x3, y3);
+        f.mul(x3, t3, x3);
+        f.mul(z3, b3Field, z3);
+        f.mul(t2, aField, t2);
+        f.sub(t3, t0, t2);
+        f.mul(t3, aField, t3);
+        f.add(t3, t3, z3);
+        f.add(z3, t0, t0);
+        f.add(t0, z3, t0);
+        f.add(t0, t0, t2);
+        f.mul(t0, t0, t3);
+        f.add(y3, y3, t0);
+        f.mul(t2, c[1], c[2]);
+        f.add(t2, t2, t2);
+        f.mul(t0, t2, t3);
+        f.sub(x3, x3, t0);
+        f.mul(z3, t2, t1);
+        f.add(z3, z3, z3);
+        f.add(z3, z3, z3);
+        f.set(r[0], x3);
+        f.set(r[1], y3);
+        f.set(r[2], z3);
+    }
+
+    /**
+     * r=a^(p-2)=a^(-1) mod p，乘法序列只取决于p
+     */
+    private static void invert(Field f, int[] r, int[] a) {
+        if (Metrics.ENABLED)
+            Metrics.FIELD_INVERSIONS.increment();
+        BigInteger e = f.p.subtract(BigInteger.TWO);
+        f.set(r, f.one);
+        for (int i = e.bitLength() - 1; i >= 0; i--) {
+            f.sqr(r, r);
+            if (e.testBit(i))
+                f.mul(r, r, a);
+        }
+    }
+
+    /**
+     * 椭圆曲线上点的数乘(滑动窗口，迭代)
+     *
+     * @param k 倍数
+     * @param c 点的坐标
+     * @param w 窗口宽度(1 <= w <= 8)
+     * @return 结果坐标
+     */
+    public BigInteger[] multiplySlidingWindow(BigInteger k, BigInteger[] c, int w) {
+        if (k.compareTo(BigInteger.ZERO) <= 0 || w < 1 || w > 8)
+            throw new IllegalArgumentException();
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        Field f = field();
+        // 预计算c, 3c, 5c, ..., (2^w-1)c
+        int[][][] table = normalizeAll(f, oddMultiples(f, toJacobian(f, c), 1 << (w - 1)));
+        JacobianPoint q = new JacobianPoint(f);
+        int i = k.bitLength() - 1;
+        while (i >= 0) {
+            if (!k.testBit(i)) {
+                twiceInto(f, q, q);
+                i--;
+                continue;
+            }
+            // 找到以1结尾的最长窗口[s, i]
+            int s = Math.max(i - w + 1, 0);
+            while (!k.testBit(s))
+                s++;
+            int u = 0;
+            for (int j = i; j >= s; j--) {
+                twiceInto(f, q, q);
+                u = (u << 1) | (k.testBit(j) ? 1 : 0);
+            }
+            addMixedInto(f, q, q, table[u >> 1], false);
+            i = s - 1;
+        }
+        return toAffine(f, q);
+    }
+
+    /**
+     * 同时计算k1*P1+k2*P2(Shamir技巧，使用联合稀疏形式JSF)
+     * 两个数乘共用一条倍点链，倍点次数约为单次数乘的一半
+     *
+     * @param k1 倍数1
+     * @param p1 点1的坐标
+     * @param k2 倍数2
+     * @param p2 点2的坐标
+     * @return 结果坐标
+     */
+    public BigInteger[] multiScalarMultiply(BigInteger k1, BigInteger[] p1, BigInteger k2, BigInteger[] p2) {
+        if (k1.signum() < 0 || k2.signum() < 0)
+            throw new IllegalArgumentException();
+        Field f = field();
+        return toAffine(f, multiScalarJacobian(f, k1, toJacobian(f, p1), k2, toJacobian(f, p2)));
+    }
+
+    /**
+     * Jacobian坐标下的k1*P1+k2*P2
+     */
+    JacobianPoint multiScalarJacobian(Field f, BigInteger k1, JacobianPoint p1, BigInteger k2, JacobianPoint p2) {
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        int[][] jsf = jsf(k1, k2);
+        // P1, P2, P1+P2, P1-P2批量转为仿射坐标
+        JacobianPoint sum = new JacobianPoint(f);
+        JacobianPoint diff = p2.copy(f);
+        addInto(f, sum, p1, p2);
+        negateInto(f, diff, diff);
+        addInto(f, diff, p1, diff);
+        int[][][] t = normalizeAll(f, new JacobianPoint[] { p1, p2, sum, diff });
+        // table[u1+1][u2+1]=±(u1*P1+u2*P2)，u1*P1+u2*P2的符号与下标无关时取正
+        int[][][][] table = {
+                { t[2], t[0], t[3] },
+                { t[1], null, t[1] },
+                { t[3], t[0], t[2] } };
+        JacobianPoint q = new JacobianPoint(f);
+        for (int i = jsf[0].length - 1; i >= 0; i--) {
+            twiceInto(f, q, q);
+            int u1 = jsf[0][i];
+            int u2 = jsf[1][i];
+            // u1<0，或u1=0且u2<0时取负
+            if (u1 != 0 || u2 != 0)
+                addMixedInto(f, q, q, table[u1 + 1][u2 + 1], u1 < 0 || (u1 == 0 && u2 < 0));
+        }
+        return q;
+    }
+
+    /**
+     * Jacobian坐标下的k1*P1+k2*P2，两个倍数的wNAF交错计算，共用倍点
+     * 奇数倍表由调用者预先算好并批量转为仿射坐标，可以在多次计算间共用，
+     * 宽度为w的表为P, 3P, ..., (2^(w-1)-1)P，共2^(w-2)项
+     *
+     * @param t1 P1的奇数倍表
+     * @param w1 k1的窗口宽度
+     * @param t2 P2的奇数倍表
+     * @param w2 k2的窗口宽度
+     */
+    JacobianPoint multiScalarJacobian(Field f, BigInteger k1, int[][][] t1, int w1, BigInteger k2, int[][][] t2,
+            int w2) {
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        int[] naf1 = naf(k1, w1);
+        int[] naf2 = naf(k2, w2);
+        JacobianPoint q = new JacobianPoint(f);
+        for (int i = Math.max(naf1.length, naf2.length) - 1; i >= 0; i--) {
+            twiceInto(f, q, q);
+            int d1 = i < naf1.length ? naf1[i] : 0;
+            int d2 = i < naf2.length ? naf2[i] : 0;
+            // 阶很小的点的奇数倍可能是零点，表中为null，加零点不需要计算
+            if (d1 != 0 && t1[Math.abs(d1) >> 1] != null)
+                addMixedInto(f, q, q, t1[Math.abs(d1) >> 1], d1 < 0);
+            if (d2 != 0 && t2[Math.abs(d2) >> 1] != null)
+                addMixedInto(f, q, q, t2[Math.abs(d2) >> 1], d2 < 0);
+        }
+        return q;
+    }
+
+    /**
+     * 计算(k1, k2)的联合稀疏形式，低位在前，每位取-1, 0, 1
+     */
+    static int[][] jsf(BigInteger k1, BigInteger k2) {
+        int length = Math.max(k1.bitLength(), k2.bitLength()) + 1;
+        int[][] u = new int[2][length];
+        int[][] k = { magnitude(k1), magnitude(k2) };
+        int[] d = { 0, 0 };
+        // k_i+d_i>0，即还有未处理的位或进位
+        for (int j = 0; j < length - 1 || d[0] + d[1] > 0; j++) {
+            // l_i=(d_i+(k_i>>j)) mod 8
+            int[] l = { (d[0] + bits(k[0], j, 3)) & 7, (d[1] + bits(k[1], j, 3)) & 7 };
+            for (int i = 0; i < 2; i++) {
+                if ((l[i] & 1) == 0)
+                    continue;
+                // u=l_i mods 4
+                u[i][j] = (l[i] & 3) == 1 ? 1 : -1;
+                // l_i=±3 (mod 8) 且 l_(1-i)=2 (mod 4)
+                if ((l[i] == 3 || l[i] == 5) && (l[1 - i] & 3) == 2)
+                    u[i][j] = -u[i][j];
+            }
+            for (int i = 0; i < 2; i++)
+                if (2 * d[i] == 1 + u[i][j])
+                    d[i] = 1 - d[i];
+        }
+        return u;
+    }
+
+    /**
+     * 根据倍数的位数选择窗口宽度
+     */
+    static int window(int bits) {
+        if (bits < 16)
+            return 2;
+        else if (bits < 64)
+            return 3;
+        else if (bits < 320)
+            return 4;
         else
-            // 返回(k-1)*c + c
-            return this.add(this.multiply(k.subtract(BigInteger.ONE), c), c);
+            return 5;
+    }
 
+    /**
+     * 计算k的宽度为w的NAF表示，低位在前，每位为0或绝对值小于2^(w-1)的奇数
+     */
+    static int[] naf(BigInteger k, int w) {
+        int bitLength = k.bitLength();
+        int[] naf = new int[bitLength + 1];
+        int[] mag = magnitude(k);
+        int sign = 1 << (w - 1);
+        // carry=1表示前面取了负数位，剩余部分要加1
+        int carry = 0;
+        int i = 0;
+        while (i <= bitLength) {
+            // 剩余部分为偶数，这一位为0
+            if (bits(mag, i, 1) == carry) {
+                i++;
+                continue;
+            }
+            // d=剩余部分 mods 2^w
+            int d = bits(mag, i, w) + carry;
+            carry = (d & sign) != 0 ? 1 : 0;
+            naf[i] = d - (carry << w);
+            // 后面w-1位都为0
+            i += w;
+        }
+        return naf;
     }
 
     /**
-     * 求点G的阶
-     * 
+     * 非负整数k的小端32位字数组，末尾至少留一个0字
+     */
+    static int[] magnitude(BigInteger k) {
+        return Field.toLimbs(k, k.bitLength() / 32 + 2);
+    }
+
+    /**
+     * 取mag的第i位开始的w位(w <= 31)
+     */
+    static int bits(int[] mag, int i, int w) {
+        int index = i >>> 5;
+        if (index >= mag.length)
+            return 0;
+        long v = mag[index] & Field.MASK;
+        if (index + 1 < mag.length)
+            v |= (mag[index + 1] & Field.MASK) << 32;
+        return (int) (v >>> (i & 31)) & ((1 << w) - 1);
+    }
+
+    /**
+     * 预计算c, 3c, 5c, ..., (2m-1)c(Jacobian坐标)
+     */
+    JacobianPoint[] oddMultiples(Field f, JacobianPoint c, int m) {
+        JacobianPoint[] table = new JacobianPoint[m];
+        table[0] = c;
+        if (m > 1) {
+            JacobianPoint c2 = new JacobianPoint(f);
+            twiceInto(f, c2, c);
+            for (int i = 1; i < m; i++) {
+                table[i] = new JacobianPoint(f);
+                addInto(f, table[i], table[i - 1], c2);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 当前线程的域运算对象
+     */
+    Field field() {
+        return fields.get();
+    }
+
+    /**
+     * r=-c
+     */
+    void negateInto(Field f, JacobianPoint r, JacobianPoint c) {
+        r.set(f, c);
+        f.neg(r.y, r.y);
+    }
+
+    /**
+     * 仿射坐标转Jacobian坐标(X, Y, Z)
+     */
+    JacobianPoint toJacobian(Field f, BigInteger[] c) {
+        if (isZero(c))
+            return new JacobianPoint(f);
+        return new JacobianPoint(f, f.fromBigInteger(c[0]), f.fromBigInteger(c[1]));
+    }
+
+    /**
+     * Jacobian坐标转仿射坐标，需要一次求逆
+     */
+    BigInteger[] toAffine(Field f, JacobianPoint c) {
+        if (c.infinity)
+            return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+        int[] zInv = f.create();
+        int[] t = f.create();
+        f.inv(zInv, c.z);
+        f.sqr(t, zInv);
+        // x=X/Z^2, y=Y/Z^3
+        f.mul(zInv, t, zInv);
+        f.mul(t, c.x, t);
+        f.mul(zInv, c.y, zInv);
+        return new BigInteger[] { f.toBigInteger(t), f.toBigInteger(zInv) };
+    }
+
+    /**
+     * 判断Jacobian坐标的点c的横坐标是否为x，即X=x*Z^2，不需要求逆
+     */
+    boolean hasAffineX(Field f, JacobianPoint c, BigInteger x) {
+        if (c.infinity)
+            return false;
+        int[] t = f.temp[0];
+        f.sqr(t, c.z);
+        f.mul(t, t, f.fromBigInteger(x));
+        return f.equals(c.x, t);
+    }
+
+    /**
+     * 批量把Jacobian坐标的点转为仿射坐标，所有点共用一次求逆
+     *
+     * @param c 点的Jacobian坐标
+     * @return 点的仿射坐标，零点为(0, 0)
+     */
+    BigInteger[][] toAffineAll(Field f, JacobianPoint[] c) {
+        int[][][] t = normalizeAll(f, c);
+        BigInteger[][] result = new BigInteger[c.length][];
+        for (int i = 0; i < c.length; i++)
+            result[i] = t[i] == null ? new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO }
+                    : new BigInteger[] { f.toBigInteger(t[i][0]), f.toBigInteger(t[i][1]) };
+        return result;
+    }
+
+    /**
+     * 批量把Jacobian坐标的点转为域表示下的仿射坐标(Montgomery技巧)，
+     * 只需一次求逆和3(n-1)次乘法
+     *
+     * @param c 点的Jacobian坐标
+     * @return 点的仿射坐标，零点为null
+     */
+    int[][][] normalizeAll(Field f, JacobianPoint[] c) {
+        int[][][] result = new int[c.length][][];
+        // prefix[i]为前i个非零点Z坐标之积
+        int[][] prefix = new int[c.length][];
+        int[] u = f.one.clone();
+        for (int i = 0; i < c.length; i++) {
+            // 零点没有逆元，跳过
+            if (c[i].infinity)
+                continue;
+            prefix[i] = u.clone();
+            f.mul(u, u, c[i].z);
+        }
+        f.inv(u, u);
+        int[] zInv = f.create();
+        int[] t = f.create();
+        for (int i = c.length - 1; i >= 0; i--) {
+            if (prefix[i] == null)
+                continue;
+            f.mul(zInv, u, prefix[i]);
+            f.mul(u, u, c[i].z);
+            f.sqr(t, zInv);
+            // x=X/Z^2, y=Y/Z^3
+            int[] x = f.create();
+            int[] y = f.create();
+            f.mul(x, c[i].x, t);
+            f.mul(t, t, zInv);
+            f.mul(y, c[i].y, t);
+            result[i] = new int[][] { x, y };
+        }
+        return result;
+    }
+
+    /**
+     * 批量求模p的逆元
+     *
+     * @param a 待求逆的元素，均不能为0
+     * @return 各元素的逆元
+     */
+    public BigInteger[] modInverseAll(BigInteger[] a) {
+        return modInverseAll(a, p);
+    }
+
+    /**
+     * 批量求模m的逆元(Montgomery技巧)，只需一次求逆和3(n-1)次乘法
+     *
+     * @param a 待求逆的元素，均要与m互素
+     * @param m 模数
+     * @return 各元素的逆元
+     */
+    public static BigInteger[] modInverseAll(BigInteger[] a, BigInteger m) {
+        BigInteger[] result = new BigInteger[a.length];
+        if (a.length == 0)
+            return result;
+        // c[i]=a[0]*a[1]*...*a[i]
+        BigInteger[] c = new BigInteger[a.length];
+        c[0] = a[0].mod(m);
+        for (int i = 1; i < a.length; i++)
+            c[i] = c[i - 1].multiply(a[i]).mod(m);
+        BigInteger u = c[a.length - 1].modInverse(m);
+        for (int i = a.length - 1; i > 0; i--) {
+            result[i] = u.multiply(c[i - 1]).mod(m);
+            u = u.multiply(a[i]).mod(m);
+        }
+        result[0] = u;
+        return result;
+    }
+
+    /**
+     * Jacobian坐标下的倍点r=2c，不需要求逆，r可以就是c
+     */
+    void twiceInto(Field f, JacobianPoint r, JacobianPoint c) {
+        if (Metrics.ENABLED)
+            Metrics.POINT_DOUBLINGS.increment();
+        // 零点或y=0时2c=O
+        if (c.infinity || f.isZero(c.y)) {
+            r.setInfinity();
+            return;
+        }
+        int[] yy = f.temp[0];
+        int[] s = f.temp[1];
+        int[] m = f.temp[2];
+        int[] t = f.temp[3];
+        int[] x3 = f.temp[4];
+        f.sqr(yy, c.y);
+        // S=4XY^2
+        f.mul(s, c.x, yy);
+        f.add(s, s, s);
+        f.add(s, s, s);
+        // M=3X^2+aZ^4
+        if (aIsMinus3) {
+            // a=-3时M=3(X-Z^2)(X+Z^2)
+            f.sqr(t, c.z);
+            f.add(m, c.x, t);
+            f.sub(t, c.x, t);
+            f.mul(m, m, t);
+        } else {
+            f.sqr(m, c.x);
+            if (!aIsZero) {
+                f.sqr(t, c.z);
+                f.sqr(t, t);
+                f.mul(t, t, aField);
+            }
+        }
+        f.add(x3, m, m);
+        f.add(m, x3, m);
+        if (!aIsMinus3 && !aIsZero)
+            f.add(m, m, t);
+        // Z'=2YZ，c的坐标此后只用到Y^2
+        f.mul(r.z, c.y, c.z);
+        f.add(r.z, r.z, r.z);
+        // X'=M^2-2S
+        f.sqr(x3, m);
+        f.sub(x3, x3, s);
+        f.sub(x3, x3, s);
+        // Y'=M(S-X')-8Y^4
+        f.sub(t, s, x3);
+        f.mul(r.y, m, t);
+        f.sqr(t, yy);
+        f.add(t, t, t);
+        f.add(t, t, t);
+        f.add(t, t, t);
+        f.sub(r.y, r.y, t);
+        f.set(r.x, x3);
+        r.infinity = false;
+    }
+
+    /**
+     * Jacobian坐标下的加法r=a+b，不需要求逆，r可以是a或b
+     */
+    void addInto(Field f, JacobianPoint r, JacobianPoint pa, JacobianPoint pb) {
+        if (Metrics.ENABLED)
+            Metrics.POINT_ADDITIONS.increment();
+        // 点a为零点
+        if (pa.infinity) {
+            r.set(f, pb);
+            return;
+        }
+        // 点b为零点
+        if (pb.infinity) {
+            r.set(f, pa);
+            return;
+        }
+        int[] z1z1 = f.temp[5];
+        int[] z2z2 = f.temp[6];
+        int[] u1 = f.temp[7];
+        int[] s1 = f.temp[4];
+        int[] h = f.temp[3];
+        int[] rr = f.temp[2];
+        f.sqr(z1z1, pa.z);
+        f.sqr(z2z2, pb.z);
+        // U1=X1*Z2^2, U2=X2*Z1^2, H=U2-U1
+        f.mul(u1, pa.x, z2z2);
+        f.mul(h, pb.x, z1z1);
+        f.sub(h, h, u1);
+        // S1=Y1*Z2^3, S2=Y2*Z1^3, r=S2-S1
+        f.mul(s1, pa.y, pb.z);
+        f.mul(s1, s1, z2z2);
+        f.mul(rr, pb.y, pa.z);
+        f.mul(rr, rr, z1z1);
+        f.sub(rr, rr, s1);
+        if (f.isZero(h)) {
+            // 点a=点b
+            if (f.isZero(rr))
+                twiceInto(f, r, pa);
+            // 点a和点b互为负元
+            else
+                r.setInfinity();
+            return;
+        }
+        // Z3=Z1*Z2*H
+        f.mul(r.z, pa.z, pb.z);
+        f.mul(r.z, r.z, h);
+        addTail(f, r, rr, h, u1, s1);
+    }
+
+    /**
+     * Jacobian坐标的点加仿射坐标的点(混合加法)r=a±b，仿射坐标的零点为null，r可以是a
+     */
+    void addMixedInto(Field f, JacobianPoint r, JacobianPoint pa, int[][] pb, boolean negate) {
+        if (Metrics.ENABLED)
+            Metrics.POINT_ADDITIONS.increment();
+        // 点b为零点
+        if (pb == null) {
+            r.set(f, pa);
+            return;
+        }
+        // 点a为零点
+        if (pa.infinity) {
+            r.setAffine(f, pb[0], pb[1]);
+            if (negate)
+                f.neg(r.y, r.y);
+            return;
+        }
+        int[] z1z1 = f.temp[5];
+        int[] h = f.temp[3];
+        int[] rr = f.temp[2];
+        f.sqr(z1z1, pa.z);
+        // U2=x2*Z1^2, H=U2-X1
+        f.mul(h, pb[0], z1z1);
+        f.sub(h, h, pa.x);
+        // S2=±y2*Z1^3, r=S2-Y1
+        f.mul(rr, pb[1], pa.z);
+        f.mul(rr, rr, z1z1);
+        if (negate)
+            f.neg(rr, rr);
+        f.sub(rr, rr, pa.y);
+        if (f.isZero(h)) {
+            // 点a=点b
+            if (f.isZero(rr))
+                twiceInto(f, r, pa);
+            // 点a和点b互为负元
+            else
+                r.setInfinity();
+            return;
+        }
+        // Z3=Z1*H
+        f.mul(r.z, pa.z, h);
+        addTail(f, r, rr, h, pa.x, pa.y);
+    }
+
+    /**
+     * 加法的公共部分：X3=r^2-H^3-2U1*H^2，Y3=r(U1*H^2-X3)-S1*H^3
+     * 会覆盖h，u1和s1可以是r的坐标
+     */
+    private static void addTail(Field f, JacobianPoint pc, int[] r, int[] h, int[] u1, int[] s1) {
+        int[] hh = f.temp[0];
+        int[] v = f.temp[1];
+        f.sqr(hh, h);
+        // V=U1*H^2
+        f.mul(v, u1, hh);
+        // H^3
+        f.mul(h, h, hh);
+        // S1*H^3
+        f.mul(hh, s1, h);
+        // X3=r^2-H^3-2V
+        f.sqr(pc.x, r);
+        f.sub(pc.x, pc.x, h);
+        f.sub(pc.x, pc.x, v);
+        f.sub(pc.x, pc.x, v);
+        // Y3=r(V-X3)-S1*H^3
+        f.sub(v, v, pc.x);
+        f.mul(pc.y, r, v);
+        f.sub(pc.y, pc.y, hh);
+        pc.infinity = false;
+    }
+
+    /**
+     * 求点G的阶(小步大步法)
+     * 由Hasse定理，曲线的点数在[p+1-2sqrt(p), p+1+2sqrt(p)]内，且是G的阶的倍数。
+     * 用小步大步法在这个区间内找到一个M使MG=O，再分解M得到G的阶，
+     * 需要约p^(1/4)次点加法和同样大小的哈希表，适用于p不超过约80位的曲线
+     *
      * @param g 点G的坐标
      * @return G的阶n
      */
     public BigInteger order(BigInteger[] g) {
-        BigInteger n = BigInteger.ONE;
-        BigInteger[] t = g;
-        do {
-            t = this.add(t, g);
-            n = n.add(BigInteger.ONE);
-        } while (!isZero(t));
+        if (isZero(g))
+            return BigInteger.ONE;
+        if (!exist(g))
+            throw new IllegalArgumentException();
+        Field f = field();
+        // s=floor(2sqrt(p))，点数在[low, high]内
+        BigInteger s = p.shiftLeft(2).sqrt();
+        BigInteger low = p.add(BigInteger.ONE).subtract(s);
+        BigInteger high = p.add(BigInteger.ONE).add(s);
+        // 小步数m，每个大步覆盖2m+1个值
+        BigInteger mm = s.sqrt().add(BigInteger.ONE);
+        if (mm.bitLength() > MAX_BABY_STEPS_BITS)
+            throw new IllegalArgumentException("曲线太大，无法用小步大步法求阶");
+        int m = mm.intValue();
+        int[][] gf = { f.fromBigInteger(g[0]), f.fromBigInteger(g[1]) };
+        JacobianPoint[] batch = new JacobianPoint[BATCH];
+
+        // 小步：jG的横坐标 -> j，1<=j<=m，每BATCH个点共用一次求逆
+        HashMap<BigInteger, Integer> baby = new HashMap<>(2 * m);
+        JacobianPoint q = new JacobianPoint(f, gf[0], gf[1]);
+        for (int j = 1; j <= m; j += BATCH) {
+            int count = Math.min(BATCH, m - j + 1);
+            for (int i = 0; i < count; i++) {
+                batch[i] = q.copy(f);
+                addMixedInto(f, q, q, gf, false);
+            }
+            int[][][] t = normalizeAll(f, count == BATCH ? batch : Arrays.copyOf(batch, count));
+            for (int i = 0; i < count; i++) {
+                // jG=O，阶不超过m
+                if (t[i] == null)
+                    return order(g, BigInteger.valueOf(j + i));
+                Integer k = baby.putIfAbsent(f.toBigInteger(t[i][0]), j + i);
+                // jG=±kG
+                if (k != null)
+                    return order(g, multipleOf(g, BigInteger.valueOf(j + i - k), BigInteger.valueOf(j + i + k)));
+            }
+        }
+
+        // 大步：c=low+m+i(2m+1)，若cG=±jG则(c∓j)G=O
+        BigInteger step = BigInteger.valueOf(2 * m + 1);
+        JacobianPoint g0 = new JacobianPoint(f, gf[0], gf[1]);
+        int[][] sf = normalizeAll(f, new JacobianPoint[] { multiplyJacobian(f, step, g0, 2) })[0];
+        // (2m+1)G=O
+        if (sf == null)
+            return order(g, step);
+        BigInteger c = low.add(BigInteger.valueOf(m));
+        q = multiplyJacobian(f, c, g0, window(c.bitLength()));
+        long giants = high.subtract(low).divide(step).longValueExact() + 1;
+        for (long i = 0; i < giants; i += BATCH) {
+            int count = (int) Math.min(BATCH, giants - i);
+            for (int k = 0; k < count; k++) {
+                batch[k] = q.copy(f);
+                addMixedInto(f, q, q, sf, false);
+            }
+            int[][][] t = normalizeAll(f, count == BATCH ? batch : Arrays.copyOf(batch, count));
+            for (int k = 0; k < count; k++, c = c.add(step)) {
+                if (t[k] == null)
+                    return order(g, c);
+                Integer j = baby.get(f.toBigInteger(t[k][0]));
+                if (j != null)
+                    return order(g, multipleOf(g, c.subtract(BigInteger.valueOf(j)), c.add(BigInteger.valueOf(j))));
+            }
+        }
+        // 点不在曲线上时才会找不到
+        throw new IllegalStateException();
+    }
+
+    /**
+     * 已知MG=O时求点G的阶：分解M，逐个去掉不影响MG=O的素因子
+     *
+     * @param g 点G的坐标
+     * @param m G的阶的一个正倍数，如曲线的点数
+     * @return G的阶n
+     */
+    public BigInteger order(BigInteger[] g, BigInteger m) {
+        if (m.signum() <= 0 || !isZero(multiply(m, g)))
+            throw new IllegalArgumentException();
+        BigInteger n = m;
+        for (BigInteger q : primeFactors(m))
+            while (n.mod(q).signum() == 0 && isZero(multiply(n.divide(q), g)))
+                n = n.divide(q);
         return n;
     }
 
+    /**
+     * 返回候选值中第一个满足cG=O的c
+     */
+    private BigInteger multipleOf(BigInteger[] g, BigInteger... candidates) {
+        for (BigInteger c : candidates)
+            if (c.signum() > 0 && isZero(multiply(c, g)))
+                return c;
+        throw new IllegalStateException();
+    }
+
+    /**
+     * 正整数m的所有不同素因子，从小到大(试除后用Pollard rho分解)
+     */
+    static BigInteger[] primeFactors(BigInteger m) {
+        TreeSet<BigInteger> primes = new TreeSet<>();
+        for (int q = 2; q < 1000 && m.compareTo(BigInteger.ONE) > 0; q++) {
+            BigInteger bq = BigInteger.valueOf(q);
+            if (m.mod(bq).signum() == 0) {
+                primes.add(bq);
+                do
+                    m = m.divide(bq);
+                while (m.mod(bq).signum() == 0);
+            }
+        }
+        factor(m, primes);
+        return primes.toArray(new BigInteger[0]);
+    }
+
+    private static void factor(BigInteger m, TreeSet<BigInteger> primes) {
+        if (m.equals(BigInteger.ONE))
+            return;
+        if (m.isProbablePrime(64)) {
+            primes.add(m);
+            return;
+        }
+        BigInteger d = pollardRho(m);
+        factor(d, primes);
+        factor(m.divide(d), primes);
+    }
+
+    /**
+     * Pollard rho(Floyd判圈)，返回合数m的一个非平凡因子
+     */
+    private static BigInteger pollardRho(BigInteger m) {
+        for (BigInteger c = BigInteger.ONE;; c = c.add(BigInteger.ONE)) {
+            BigInteger x = BigInteger.TWO;
+            BigInteger y = BigInteger.TWO;
+            BigInteger d = BigInteger.ONE;
+            while (d.equals(BigInteger.ONE)) {
+                // x=x^2+c, y=(y^2+c)^2+c
+                x = x.multiply(x).add(c).mod(m);
+                y = y.multiply(y).add(c).mod(m);
+                y = y.multiply(y).add(c).mod(m);
+                d = x.subtract(y).gcd(m);
+            }
+            if (!d.equals(m))
+                return d;
+        }
+    }
+
     /**
      * 判断是否为零点
      */
@@ -1,19 +1,42 @@
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Scanner;
+import java.util.function.Supplier;
 
 /**
  * 椭圆曲线数字签名算法
  */
 public class ECDSA {
+    // 该系统的参数
+    private final DomainParameters domain;
     // 该系统的椭圆曲线
-    private ECC ecc;
+    private final ECC ecc;
     // 基点
     private final BigInteger[] g;
     // 基点的阶
     private final BigInteger n;
+    // 摘要算法
+    private final String algorithm;
+    // 默认的摘要算法
+    static final String HASH = "SHA";
+    // 流式摘要每次读入的字节数
+    private static final int BUFFER = 1 << 16;
+    // 映射文件时每段的最大字节数
+    private static final long REGION = 1 << 30;
+    // 批量验证时G和Q的wNAF窗口宽度，G的表每批只算一次，可以取得宽一些
+    private static final int BATCH_G_WINDOW = 7;
+    private static final int BATCH_Q_WINDOW = 5;
+    // 每个线程每种算法一个摘要对象，每个线程一个随机数生成器，签名时不再查找算法实现，线程间也不争用
+    private static final ThreadLocal<HashMap<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(ECDSA::newRandom);
 
     /**
      * 构造一个签名系统
@@ -25,18 +48,31 @@ public class ECDSA {
      * @param n 基点G的阶（要求是素数）
      */
     public ECDSA(BigInteger q, BigInteger a, BigInteger b, BigInteger[] g, BigInteger n) {
-        ecc = new ECC(q, a, b);
-        // G不在曲线上
-        if (!ecc.exist(g))
-            throw new IllegalArgumentException();
-        // n不是素数
-        if (!n.isProbablePrime((int) (n.bitLength() * 0.7)))
-            throw new IllegalArgumentException();
-        // n不是G的阶
-        if (!ECC.isZero(ecc.multiply(n, g)))
-            throw new IllegalArgumentException();
-        this.g = g;
-        this.n = n;
+        this(DomainParameters.of(q, a, b, g, n));
+    }
+
+    /**
+     * 用已检查过的参数构造一个签名系统
+     *
+     * @param domain 椭圆曲线参数
+     */
+    public ECDSA(DomainParameters domain) {
+        this(domain, HASH);
+    }
+
+    /**
+     * 用已检查过的参数构造一个签名系统
+     *
+     * @param domain    椭圆曲线参数
+     * @param algorithm 摘要算法，如SHA-256, SHA-384, SHA-512
+     */
+    public ECDSA(DomainParameters domain, String algorithm) {
+        digest(algorithm);
+        this.algorithm = algorithm;
+        this.domain = domain;
+        this.ecc = domain.getCurve();
+        this.g = domain.getG();
+        this.n = domain.getN();
     }
 
     /**
@@ -45,14 +81,14 @@ public class ECDSA {
      * @return 公钥Q的横纵坐标，私钥d
      */
     private BigInteger[] generateKey() {
-        SecureRandom secureRandom = new SecureRandom();
+        SecureRandom secureRandom = RANDOM.get();
         BigInteger d;
         do {
             // 1<=d<=n-1
             d = new BigInteger(n.bitLength(), secureRandom);
         } while (d.equals(BigInteger.ZERO) || d.compareTo(n) >= 0);
         // Q=dG
-        BigInteger[] q = ecc.multiply(d, g);
+        BigInteger[] q = multiplyG(d);
         return new BigInteger[] { q[0], q[1], d };
     }
 
@@ -64,40 +100,92 @@ public class ECDSA {
      * @return 签名r, s
      */
     public BigInteger[] sign(BigInteger m, BigInteger d) {
-        SecureRandom secureRandom = new SecureRandom();
-        BigInteger r = BigInteger.ZERO;
-        BigInteger s = BigInteger.ZERO;
-        BigInteger k, e;
-        BigInteger[] p;
-        try {
-            MessageDigest messageDigest = MessageDigest.getInstance("SHA");
+        return signHash(hash(m), d, RANDOM.get());
+    }
+
+    /**
+     * 确定性签名(RFC 6979)，k由私钥和消息摘要经HMAC_DRBG导出，
+     * 同样的私钥和消息总是得到同样的签名，不需要随机数
+     *
+     * @param m 消息
+     * @param d 私钥
+     * @return 签名r, s
+     */
+    public BigInteger[] signDeterministic(BigInteger m, BigInteger d) {
+        BigInteger e = hash(m);
+        return signHash(e, d, deterministic(e, d));
+    }
+
+    /**
+     * 对摘要签名，k随机产生
+     *
+     * @param e      消息的摘要
+     * @param d      私钥
+     * @param random 产生k的随机数生成器
+     * @return 签名r, s
+     */
+    BigInteger[] signHash(BigInteger e, BigInteger d, SecureRandom random) {
+        return signHash(e, d, () -> {
+            BigInteger k;
             while (true) {
-                k = new BigInteger(n.bitLength(), secureRandom);
+                k = new BigInteger(n.bitLength(), random);
                 // 1<=k<=n-1
-                if (k.equals(BigInteger.ZERO) || k.compareTo(n) >= 0)
-                    continue;
-                // P=kG
-                p = ecc.multiply(k, g);
-                // r=xp % n
-                r = p[0].mod(n);
-                // 如果r=0，重新开始
-                if (r.equals(BigInteger.ZERO))
-                    continue;
-                messageDigest.update(toByteArray(m));
-                // e=Hash(m)
-                e = new BigInteger(1, messageDigest.digest());
+                if (k.signum() > 0 && k.compareTo(n) < 0)
+                    return k;
+                if (Metrics.ENABLED)
+                    Metrics.NONCE_RETRIES.increment();
+            }
+        });
+    }
+
+    /**
+     * 对摘要e用RFC 6979产生k的来源
+     */
+    Supplier<BigInteger> deterministic(BigInteger e, BigInteger d) {
+        return new HmacDrbg(hmac(algorithm), n, d, e)::next;
+    }
+
+    /**
+     * 对摘要签名
+     *
+     * @param e     消息的摘要
+     * @param d     私钥
+     * @param nonce 依次给出1<=k<=n-1，r或s为0时会再取下一个
+     * @return 签名r, s
+     */
+    BigInteger[] signHash(BigInteger e, BigInteger d, Supplier<BigInteger> nonce) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        BigInteger r, s, k;
+        BigInteger[] p;
+        while (true) {
+            k = nonce.get();
+            // P=kG
+            p = multiplyG(k);
+            // r=xp % n
+            r = p[0].mod(n);
+            // 如果r=0，重新开始
+            if (!r.equals(BigInteger.ZERO)) {
                 // s=k^(-1)*(e+dr) % n
                 s = k.modInverse(n).multiply(e.add(d.multiply(r))).mod(n);
                 // 如果s=0，重新开始
                 if (!s.equals(BigInteger.ZERO))
                     break;
             }
-        } catch (NoSuchAlgorithmException e1) {
-            e1.printStackTrace();
+            if (Metrics.ENABLED)
+                Metrics.NONCE_RETRIES.increment();
         }
+        if (Metrics.ENABLED)
+            Metrics.SIGN.record(System.nanoTime() - start);
         return new BigInteger[] { r, s };
     }
 
+    /**
+     * 计算kG，使用参数共用的预计算表
+     */
+    private BigInteger[] multiplyG(BigInteger k) {
+        return domain.multiplyG(k);
+    }
+
     /**
      * 验证签名
      *
@@ -108,28 +196,39 @@ public class ECDSA {
      * @return 签名是否合法
      */
     public boolean verify(BigInteger m, BigInteger r, BigInteger s, BigInteger[] q) {
+        return verifyHash(hash(m), r, s, q);
+    }
+
+    /**
+     * 验证对摘要的签名
+     *
+     * @param e 消息的摘要
+     * @param r 签名r
+     * @param s 签名s
+     * @param q 公钥Q
+     * @return 签名是否合法
+     */
+    boolean verifyHash(BigInteger e, BigInteger r, BigInteger s, BigInteger[] q) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        boolean valid = verifyHashUntimed(e, r, s, q);
+        if (Metrics.ENABLED)
+            Metrics.VERIFY.record(System.nanoTime() - start);
+        return valid;
+    }
+
+    private boolean verifyHashUntimed(BigInteger e, BigInteger r, BigInteger s, BigInteger[] q) {
         // 判断1<=r, s<=n-1
         if (r.compareTo(BigInteger.ONE) < 0 || r.compareTo(n) >= 0 || s.compareTo(BigInteger.ONE) < 0
                 || s.compareTo(n) >= 0)
             return false;
-        BigInteger e = BigInteger.ONE;
-        MessageDigest messageDigest;
-        try {
-            messageDigest = MessageDigest.getInstance("SHA");
-            messageDigest.update(toByteArray(m));
-            // e=Hash(m)
-            e = new BigInteger(1, messageDigest.digest());
-        } catch (NoSuchAlgorithmException e1) {
-            e1.printStackTrace();
-        }
         // w=s^(-1) mod n
         BigInteger w = s.modInverse(n);
-        // u1=ew
-        BigInteger u1 = e.multiply(w);
-        // u2=rw
-        BigInteger u2 = r.multiply(w);
+        // u1=ew mod n
+        BigInteger u1 = e.multiply(w).mod(n);
+        // u2=rw mod n
+        BigInteger u2 = r.multiply(w).mod(n);
         // X=u1*G+u2*Q
-        BigInteger[] x = ecc.add(ecc.multiply(u1, g), ecc.multiply(u2, q));
+        BigInteger[] x = ecc.multiScalarMultiply(u1, g, u2, q);
         // 判断X!=O
         if (ECC.isZero(x))
             return false;
@@ -139,6 +238,158 @@ public class ECDSA {
         return v.equals(r);
     }
 
+    /**
+     * 批量验证签名
+     * 所有s的逆元用一次求逆批量求出，摘要对象共用；
+     * G的奇数倍表每批只算一次，各个Q的奇数倍表合在一起只求一次逆，
+     * u1*G+u2*Q用两张表交错计算wNAF，共用倍点，并在Jacobian坐标下直接与r比较，不再求逆
+     *
+     * @param m 消息
+     * @param r 签名r
+     * @param s 签名s
+     * @param q 公钥Q
+     * @return 每个签名是否合法
+     */
+    public boolean[] verifyBatch(BigInteger[] m, BigInteger[] r, BigInteger[] s, BigInteger[][] q) {
+        if (m.length != r.length || m.length != s.length || m.length != q.length)
+            throw new IllegalArgumentException();
+        boolean[] result = new boolean[m.length];
+        // 只保留1<=r, s<=n-1且Q不为零点的签名
+        int[] index = new int[m.length];
+        int count = 0;
+        for (int i = 0; i < m.length; i++)
+            if (r[i].signum() > 0 && r[i].compareTo(n) < 0 && s[i].signum() > 0 && s[i].compareTo(n) < 0
+                    && !ECC.isZero(q[i]))
+                index[count++] = i;
+        if (count == 0)
+            return result;
+        // w=s^(-1) mod n
+        BigInteger[] w = new BigInteger[count];
+        for (int j = 0; j < count; j++)
+            w[j] = s[index[j]];
+        w = ECC.modInverseAll(w, n);
+        Field f = ecc.field();
+        // G, 3G, ..., (2^(BATCH_G_WINDOW-1)-1)G和每个Q的奇数倍表一起转为仿射坐标
+        int gSize = 1 << (BATCH_G_WINDOW - 2);
+        int qSize = 1 << (BATCH_Q_WINDOW - 2);
+        JacobianPoint[] odd = new JacobianPoint[gSize + count * qSize];
+        System.arraycopy(ecc.oddMultiples(f, ecc.toJacobian(f, g), gSize), 0, odd, 0, gSize);
+        for (int j = 0; j < count; j++)
+            System.arraycopy(ecc.oddMultiples(f, ecc.toJacobian(f, q[index[j]]), qSize), 0, odd, gSize + j * qSize,
+                    qSize);
+        int[][][] affine = ecc.normalizeAll(f, odd);
+        int[][][] gTable = Arrays.copyOf(affine, gSize);
+        for (int j = 0; j < count; j++) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            int i = index[j];
+            // e=Hash(m)
+            BigInteger e = hash(m[i]);
+            // u1=ew mod n, u2=rw mod n
+            BigInteger u1 = e.multiply(w[j]).mod(n);
+            BigInteger u2 = r[i].multiply(w[j]).mod(n);
+            // X=u1*G+u2*Q
+            int[][][] qTable = Arrays.copyOfRange(affine, gSize + j * qSize, gSize + (j + 1) * qSize);
+            JacobianPoint x = ecc.multiScalarJacobian(f, u1, gTable, BATCH_G_WINDOW, u2, qTable, BATCH_Q_WINDOW);
+            // x_x % n=r，即x_x为r, r+n, r+2n, ...中小于p的某个值
+            for (BigInteger v = r[i]; !result[i] && v.compareTo(ecc.getP()) < 0; v = v.add(n))
+                result[i] = ecc.hasAffineX(f, x, v);
+            if (Metrics.ENABLED)
+                Metrics.VERIFY.record(System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * e=Hash(m)，使用当前线程的摘要对象
+     */
+    BigInteger hash(BigInteger m) {
+        MessageDigest messageDigest = digest(algorithm);
+        messageDigest.update(toByteArray(m));
+        return bits2int(messageDigest.digest());
+    }
+
+    /**
+     * 读到流的末尾，边读边计算摘要，内存占用与消息长度无关
+     */
+    BigInteger hash(InputStream in) throws IOException {
+        MessageDigest messageDigest = digest(algorithm);
+        byte[] buffer = new byte[BUFFER];
+        for (int len; (len = in.read(buffer)) >= 0;)
+            messageDigest.update(buffer, 0, len);
+        return bits2int(messageDigest.digest());
+    }
+
+    /**
+     * 对缓冲区的position到limit计算摘要，之后position等于limit
+     */
+    BigInteger hash(ByteBuffer buffer) {
+        MessageDigest messageDigest = digest(algorithm);
+        messageDigest.update(buffer);
+        return bits2int(messageDigest.digest());
+    }
+
+    /**
+     * 把文件的[position, position+size)分段映射到内存后计算摘要，不经过Java堆
+     */
+    BigInteger hash(FileChannel channel, long position, long size) throws IOException {
+        MessageDigest messageDigest = digest(algorithm);
+        for (long off = 0; off < size; off += REGION)
+            messageDigest.update(channel.map(FileChannel.MapMode.READ_ONLY, position + off, Math.min(REGION, size - off)));
+        return bits2int(messageDigest.digest());
+    }
+
+    /**
+     * 摘要转为整数e，摘要比n长时只取左边n的位数那么多位(SEC1和RFC 6979的bits2int)，
+     * 签名和验证都经过这里
+     */
+    private BigInteger bits2int(byte[] digest) {
+        BigInteger e = new BigInteger(1, digest);
+        int excess = 8 * digest.length - n.bitLength();
+        return excess > 0 ? e.shiftRight(excess) : e;
+    }
+
+    /**
+     * 当前线程的摘要对象，已经清空
+     */
+    static MessageDigest digest(String algorithm) {
+        MessageDigest messageDigest = DIGESTS.get().computeIfAbsent(algorithm, a -> {
+            try {
+                return MessageDigest.getInstance(a);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        });
+        // 上次计算可能因异常中断
+        messageDigest.reset();
+        return messageDigest;
+    }
+
+    /**
+     * 摘要算法对应的HMAC算法，如SHA-256对应HmacSHA256
+     */
+    static String hmac(String algorithm) {
+        String name = algorithm.replace("-", "").toUpperCase();
+        return "Hmac" + (name.equals("SHA") ? "SHA1" : name);
+    }
+
+    /**
+     * 当前线程的随机数生成器
+     */
+    static SecureRandom random() {
+        return RANDOM.get();
+    }
+
+    /**
+     * 新建一个随机数生成器，优先使用DRBG，由系统熵源播种
+     */
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
     /**
      * BigInteger转byte[]，去掉符号位0
      */
@@ -0,0 +1,219 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 椭圆曲线集成加密(ECIES)
+ * 每条消息做一次ECDH：随机k，R=kG，共享点S=kP，由S的横坐标经X9.63 KDF(SHA-256)导出AES-256密钥，
+ * 消息按块用AES-GCM加密，吞吐量取决于对称加密而不是数乘。
+ * 密文为压缩格式的R，然后是各块的密文，每块CHUNK字节明文加16字节认证标签，最后一块可以较短。
+ * 第i块的nonce为11字节的i加1字节的结束标志，块被删除、调换或截断都会导致认证失败
+ */
+public class ECIES {
+    // 每块明文的字节数
+    public static final int CHUNK = 1 << 16;
+    // n的最少位数，n太小时共享点只有很少几种，导出的密钥和nonce会重复
+    public static final int MIN_ORDER_BITS = 160;
+    // AES-GCM认证标签的字节数
+    private static final int TAG = 16;
+    // AES密钥的字节数
+    private static final int KEY = 32;
+    // 每个线程一个Cipher对象
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final DomainParameters domain;
+    private final ECC ecc;
+
+    /**
+     * @param domain 椭圆曲线参数
+     */
+    public ECIES(DomainParameters domain) {
+        if (domain.getN().bitLength() < MIN_ORDER_BITS)
+            throw new IllegalArgumentException("Curve is too small.");
+        this.domain = domain;
+        this.ecc = domain.getCurve();
+    }
+
+    /**
+     * 加密
+     *
+     * @param p 接收方公钥
+     * @param m 明文
+     * @return 密文
+     */
+    public byte[] encrypt(BigInteger[] p, byte[] m) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                Encoding.pointLength(ecc, true) + m.length + (m.length / CHUNK + 1) * TAG);
+        try {
+            encrypt(p, new ByteArrayInputStream(m), out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解密
+     *
+     * @param d 接收方私钥
+     * @param c 密文
+     * @return 明文
+     */
+    public byte[] decrypt(BigInteger d, byte[] c) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(c.length);
+        try {
+            decrypt(d, new ByteArrayInputStream(c), out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 流式加密，读到in的末尾，内存占用与消息长度无关
+     *
+     * @param p   接收方公钥
+     * @param in  明文
+     * @param out 密文
+     */
+    public void encrypt(BigInteger[] p, InputStream in, OutputStream out) throws IOException {
+        if (ECC.isZero(p) || !ecc.exist(p))
+            throw new IllegalArgumentException("Public key is illegal.");
+        BigInteger n = domain.getN();
+        SecureRandom random = ECDSA.random();
+        BigInteger k;
+        BigInteger[] s;
+        do {
+            // 1<=k<=n-1
+            do
+                k = new BigInteger(n.bitLength(), random);
+            while (k.signum() == 0 || k.compareTo(n) >= 0);
+            // S=kP
+            s = domain.multiply(k, p);
+        } while (ECC.isZero(s));
+        // R=kG
+        byte[] r = Encoding.encodePoint(ecc, domain.multiplyG(k), true);
+        out.write(r);
+        Cipher cipher = CIPHER.get();
+        SecretKeySpec key = new SecretKeySpec(kdf(s[0], r), "AES");
+        // 多读1个字节，判断当前块是否为最后一块
+        byte[] buffer = new byte[CHUNK + 1];
+        byte[] sealed = new byte[CHUNK + TAG];
+        int len = readFully(in, buffer, 0, CHUNK + 1);
+        for (long i = 0;; i++) {
+            boolean last = len <= CHUNK;
+            int count = crypt(cipher, Cipher.ENCRYPT_MODE, key, i, last, buffer, last ? len : CHUNK, sealed);
+            out.write(sealed, 0, count);
+            if (last)
+                break;
+            buffer[0] = buffer[CHUNK];
+            len = 1 + readFully(in, buffer, 1, CHUNK);
+        }
+    }
+
+    /**
+     * 流式解密，每块认证通过后才写出
+     *
+     * @param d   接收方私钥
+     * @param in  密文
+     * @param out 明文
+     */
+    public void decrypt(BigInteger d, InputStream in, OutputStream out) throws IOException {
+        byte[] r = new byte[Encoding.pointLength(ecc, true)];
+        if (readFully(in, r, 0, r.length) != r.length)
+            throw new IllegalArgumentException("Cipher is illegal.");
+        BigInteger[] pr = Encoding.decodePoint(ecc, r);
+        // S=dR
+        BigInteger[] s = domain.multiply(d, pr);
+        if (ECC.isZero(pr) || ECC.isZero(s))
+            throw new IllegalArgumentException("Cipher is illegal.");
+        Cipher cipher = CIPHER.get();
+        SecretKeySpec key = new SecretKeySpec(kdf(s[0], r), "AES");
+        byte[] buffer = new byte[CHUNK + TAG + 1];
+        byte[] plain = new byte[CHUNK];
+        int len = readFully(in, buffer, 0, CHUNK + TAG + 1);
+        for (long i = 0;; i++) {
+            boolean last = len <= CHUNK + TAG;
+            if (len < TAG)
+                throw new IllegalArgumentException("Cipher is illegal.");
+            int count = crypt(cipher, Cipher.DECRYPT_MODE, key, i, last, buffer, last ? len : CHUNK + TAG, plain);
+            out.write(plain, 0, count);
+            if (last)
+                break;
+            buffer[0] = buffer[CHUNK + TAG];
+            len = 1 + readFully(in, buffer, 1, CHUNK + TAG);
+        }
+    }
+
+    /**
+     * 用AES-GCM加密或解密一块，解密认证失败时抛出IllegalArgumentException，
+     * 加密失败不是输入的问题，抛出IllegalStateException
+     */
+    private static int crypt(Cipher cipher, int mode, SecretKeySpec key, long index, boolean last, byte[] in,
+            int len, byte[] out) {
+        byte[] nonce = new byte[12];
+        ByteBuffer.wrap(nonce).putLong(3, index);
+        nonce[11] = (byte) (last ? 1 : 0);
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(8 * TAG, nonce));
+            return cipher.doFinal(in, 0, len, out);
+        } catch (GeneralSecurityException e) {
+            if (mode == Cipher.ENCRYPT_MODE)
+                throw new IllegalStateException(e);
+            throw new IllegalArgumentException("Cipher is illegal.", e);
+        }
+    }
+
+    /**
+     * ANSI X9.63 KDF：K=SHA-256(Z || 1 || info) || SHA-256(Z || 2 || info) || ...
+     * Z为共享点横坐标的定长编码，info为R的编码
+     */
+    private byte[] kdf(BigInteger z, byte[] info) {
+        ByteBuffer shared = ByteBuffer.allocate(Encoding.fieldLength(ecc));
+        Encoding.putUnsigned(shared, z, shared.capacity());
+        MessageDigest digest = ECDSA.digest("SHA-256");
+        byte[] key = new byte[KEY];
+        for (int counter = 1, off = 0; off < KEY; counter++) {
+            digest.update(shared.array());
+            digest.update(ByteBuffer.allocate(4).putInt(counter).array());
+            digest.update(info);
+            byte[] t = digest.digest();
+            int len = Math.min(t.length, KEY - off);
+            System.arraycopy(t, 0, key, off, len);
+            off += len;
+        }
+        return key;
+    }
+
+    /**
+     * 读满len字节或到流的末尾
+     *
+     * @return 读到的字节数
+     */
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(b, off + total, len - total);
+            if (count < 0)
+                break;
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,346 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * 点和签名的二进制编码
+ * 点使用SEC1格式：零点为0x00，压缩格式为0x02/0x03加横坐标，非压缩格式为0x04加横纵坐标；
+ * 签名使用DER格式SEQUENCE { INTEGER r, INTEGER s }或定长的r||s。
+ * 整数都是大端无符号的，定长编码时左边补0。
+ * 读写ByteBuffer的方法从position开始，完成后position移到数据之后
+ */
+public final class Encoding {
+    private Encoding() {
+    }
+
+    /**
+     * 坐标的字节数
+     */
+    public static int fieldLength(ECC ecc) {
+        return (ecc.getP().bitLength() + 7) / 8;
+    }
+
+    /**
+     * 点编码的字节数
+     *
+     * @param ecc        椭圆曲线
+     * @param compressed 是否为压缩格式
+     */
+    public static int pointLength(ECC ecc, boolean compressed) {
+        return 1 + (compressed ? 1 : 2) * fieldLength(ecc);
+    }
+
+    /**
+     * SEC1编码点c
+     *
+     * @param ecc        椭圆曲线
+     * @param c          点的坐标
+     * @param compressed 是否为压缩格式
+     * @return 编码，零点为1个字节
+     */
+    public static byte[] encodePoint(ECC ecc, BigInteger[] c, boolean compressed) {
+        ByteBuffer out = ByteBuffer.allocate(ECC.isZero(c) ? 1 : pointLength(ecc, compressed));
+        encodePoint(ecc, c, compressed, out);
+        return out.array();
+    }
+
+    /**
+     * SEC1编码点c，写入out
+     *
+     * @param ecc        椭圆曲线
+     * @param c          点的坐标
+     * @param compressed 是否为压缩格式
+     * @param out        输出
+     */
+    public static void encodePoint(ECC ecc, BigInteger[] c, boolean compressed, ByteBuffer out) {
+        if (ECC.isZero(c)) {
+            out.put((byte) 0);
+            return;
+        }
+        int len = fieldLength(ecc);
+        if (compressed) {
+            // 纵坐标的奇偶性
+            out.put((byte) (c[1].testBit(0) ? 3 : 2));
+            putUnsigned(out, c[0], len);
+        } else {
+            out.put((byte) 4);
+            putUnsigned(out, c[0], len);
+            putUnsigned(out, c[1], len);
+        }
+    }
+
+    /**
+     * 解码SEC1格式的点
+     *
+     * @param ecc 椭圆曲线
+     * @param b   编码
+     * @return 点的坐标
+     */
+    public static BigInteger[] decodePoint(ECC ecc, byte[] b) {
+        ByteBuffer in = ByteBuffer.wrap(b);
+        BigInteger[] c = decodePoint(ecc, in);
+        if (in.hasRemaining())
+            throw new IllegalArgumentException("Trailing bytes.");
+        return c;
+    }
+
+    /**
+     * 从in读出SEC1格式的点，压缩格式由横坐标求平方根恢复纵坐标
+     *
+     * @param ecc 椭圆曲线
+     * @param in  输入
+     * @return 点的坐标，不在曲线上时抛出IllegalArgumentException
+     */
+    public static BigInteger[] decodePoint(ECC ecc, ByteBuffer in) {
+        int len = fieldLength(ecc);
+        BigInteger p = ecc.getP();
+        byte type = getByte(in);
+        if (type == 0)
+            return new BigInteger[] { BigInteger.ZERO, BigInteger.ZERO };
+        BigInteger[] c = new BigInteger[2];
+        c[0] = getUnsigned(in, len);
+        if (c[0].compareTo(p) >= 0)
+            throw new IllegalArgumentException("Illegal point.");
+        if (type == 2 || type == 3) {
+            // y^2=x^3+ax+b
+            BigInteger y = ecc.sqrt(c[0].pow(3).add(ecc.getA().multiply(c[0])).add(ecc.getB()));
+            if (y == null)
+                throw new IllegalArgumentException("Illegal point.");
+            // 取与标志位奇偶性相同的根
+            if (y.testBit(0) != (type == 3))
+                y = y.negate().mod(p);
+            // y=0时两个根相同，奇偶性与标志位不符
+            if (y.testBit(0) != (type == 3))
+                throw new IllegalArgumentException("Illegal point.");
+            c[1] = y;
+        } else if (type == 4) {
+            c[1] = getUnsigned(in, len);
+            if (c[1].compareTo(p) >= 0)
+                throw new IllegalArgumentException("Illegal point.");
+        } else
+            throw new IllegalArgumentException("Illegal point.");
+        // (0, 0)表示零点，不能作为曲线上的点出现
+        if (!ecc.exist(c) || ECC.isZero(c))
+            throw new IllegalArgumentException("Illegal point.");
+        return c;
+    }
+
+    /**
+     * 定长签名r||s的字节数
+     *
+     * @param n 基点的阶
+     */
+    public static int signatureLength(BigInteger n) {
+        return 2 * ((n.bitLength() + 7) / 8);
+    }
+
+    /**
+     * 定长编码签名r||s
+     *
+     * @param n 基点的阶
+     * @param s 签名r, s
+     */
+    public static byte[] encodeSignature(BigInteger n, BigInteger[] s) {
+        ByteBuffer out = ByteBuffer.allocate(signatureLength(n));
+        encodeSignature(n, s, out);
+        return out.array();
+    }
+
+    /**
+     * 定长编码签名r||s，写入out
+     *
+     * @param n   基点的阶
+     * @param s   签名r, s
+     * @param out 输出
+     */
+    public static void encodeSignature(BigInteger n, BigInteger[] s, ByteBuffer out) {
+        int len = signatureLength(n) / 2;
+        putUnsigned(out, s[0], len);
+        putUnsigned(out, s[1], len);
+    }
+
+    /**
+     * 从in读出定长签名r||s
+     *
+     * @param n  基点的阶
+     * @param in 输入
+     * @return 签名r, s
+     */
+    public static BigInteger[] decodeSignature(BigInteger n, ByteBuffer in) {
+        int len = signatureLength(n) / 2;
+        return new BigInteger[] { getUnsigned(in, len), getUnsigned(in, len) };
+    }
+
+    /**
+     * DER编码签名的字节数
+     *
+     * @param s 签名r, s
+     */
+    public static int derLength(BigInteger[] s) {
+        int body = integerLength(s[0]) + integerLength(s[1]);
+        return 1 + lengthLength(body) + body;
+    }
+
+    /**
+     * DER编码签名SEQUENCE { INTEGER r, INTEGER s }
+     *
+     * @param s 签名r, s
+     */
+    public static byte[] encodeDER(BigInteger[] s) {
+        ByteBuffer out = ByteBuffer.allocate(derLength(s));
+        encodeDER(s, out);
+        return out.array();
+    }
+
+    /**
+     * DER编码签名，写入out
+     *
+     * @param s   签名r, s
+     * @param out 输出
+     */
+    public static void encodeDER(BigInteger[] s, ByteBuffer out) {
+        if (s[0].signum() < 0 || s[1].signum() < 0)
+            throw new IllegalArgumentException();
+        out.put((byte) 0x30);
+        putLength(out, integerLength(s[0]) + integerLength(s[1]));
+        for (BigInteger x : s) {
+            // INTEGER是有符号的，toByteArray正好是最短的补码
+            byte[] b = x.toByteArray();
+            out.put((byte) 0x02);
+            putLength(out, b.length);
+            out.put(b);
+        }
+    }
+
+    /**
+     * 解码DER格式的签名
+     *
+     * @param b 编码
+     * @return 签名r, s
+     */
+    public static BigInteger[] decodeDER(byte[] b) {
+        ByteBuffer in = ByteBuffer.wrap(b);
+        BigInteger[] s = decodeDER(in);
+        if (in.hasRemaining())
+            throw new IllegalArgumentException("Trailing bytes.");
+        return s;
+    }
+
+    /**
+     * 从in读出DER格式的签名，只接受最短编码的非负整数
+     *
+     * @param in 输入
+     * @return 签名r, s
+     */
+    public static BigInteger[] decodeDER(ByteBuffer in) {
+        if (getByte(in) != 0x30)
+            throw new IllegalArgumentException("Illegal DER signature.");
+        int end = getLength(in);
+        end += in.position();
+        BigInteger[] s = new BigInteger[2];
+        for (int i = 0; i < 2; i++) {
+            if (getByte(in) != 0x02)
+                throw new IllegalArgumentException("Illegal DER signature.");
+            int len = getLength(in);
+            if (len == 0 || len > in.remaining())
+                throw new IllegalArgumentException("Illegal DER signature.");
+            int first = in.get(in.position());
+            // 负数，或者多余的前导0
+            if (first < 0 || first == 0 && len > 1 && in.get(in.position() + 1) >= 0)
+                throw new IllegalArgumentException("Illegal DER signature.");
+            s[i] = getUnsigned(in, len);
+        }
+        if (in.position() != end)
+            throw new IllegalArgumentException("Illegal DER signature.");
+        return s;
+    }
+
+    /**
+     * 非负整数x写成len字节的大端无符号数
+     */
+    static void putUnsigned(ByteBuffer out, BigInteger x, int len) {
+        if (x.signum() < 0 || x.bitLength() > 8 * len)
+            throw new IllegalArgumentException();
+        byte[] b = x.toByteArray();
+        // 去掉符号位0，左边补0
+        int skip = b.length > len ? b.length - len : 0;
+        for (int i = b.length - skip; i < len; i++)
+            out.put((byte) 0);
+        out.put(b, skip, b.length - skip);
+    }
+
+    /**
+     * 读出一个字节，输入不完整时抛出IllegalArgumentException而不是BufferUnderflowException
+     */
+    private static byte getByte(ByteBuffer in) {
+        if (!in.hasRemaining())
+            throw new IllegalArgumentException("Truncated input.");
+        return in.get();
+    }
+
+    /**
+     * 读出len字节的大端无符号数，有数组的缓冲区直接从数组构造，不复制
+     */
+    static BigInteger getUnsigned(ByteBuffer in, int len) {
+        if (len > in.remaining())
+            throw new IllegalArgumentException("Truncated input.");
+        BigInteger x;
+        if (in.hasArray()) {
+            x = new BigInteger(1, in.array(), in.arrayOffset() + in.position(), len);
+            in.position(in.position() + len);
+        } else {
+            byte[] b = new byte[len];
+            in.get(b);
+            x = new BigInteger(1, b);
+        }
+        return x;
+    }
+
+    /**
+     * DER INTEGER的总字节数
+     */
+    private static int integerLength(BigInteger x) {
+        int len = x.bitLength() / 8 + 1;
+        return 1 + lengthLength(len) + len;
+    }
+
+    /**
+     * DER长度字段的字节数
+     */
+    private static int lengthLength(int len) {
+        if (len < 0x80)
+            return 1;
+        int n = 1;
+        while (len > 0) {
+            len >>>= 8;
+            n++;
+        }
+        return n;
+    }
+
+    private static void putLength(ByteBuffer out, int len) {
+        if (len < 0x80) {
+            out.put((byte) len);
+            return;
+        }
+        int n = lengthLength(len) - 1;
+        out.put((byte) (0x80 | n));
+        for (int i = n - 1; i >= 0; i--)
+            out.put((byte) (len >>> (8 * i)));
+    }
+
+    private static int getLength(ByteBuffer in) {
+        int first = getByte(in) & 0xFF;
+        if (first < 0x80)
+            return first;
+        int n = first & 0x7F;
+        // 长度不超过int，且长格式不能用于小于0x80的长度或有前导0
+        if (n == 0 || n > 3)
+            throw new IllegalArgumentException("Illegal DER length.");
+        int len = 0;
+        for (int i = 0; i < n; i++)
+            len = (len << 8) | (getByte(in) & 0xFF);
+        if (len < 0x80 || len >>> (8 * (n - 1)) == 0)
+            throw new IllegalArgumentException("Illegal DER length.");
+        return len;
+    }
+}
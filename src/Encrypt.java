@@ -1,20 +1,44 @@
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
  * 素数域椭圆曲线简单加解密
  */
 public class Encrypt {
+    // Koblitz编码时每块最多尝试的横坐标个数，占横坐标的低8位
+    private static final int TRIES = 256;
+    // 分块加密时块数超过这个值才为公钥构造预计算表
+    private static final int COMB_BLOCKS = 4;
+
+    // 已检查过的参数，不知道G的阶时为null
+    private final DomainParameters domain;
     private final ECC ecc;
     private final BigInteger[] g;
+    // 基点的预计算表
+    private volatile FixedBaseComb comb;
 
     public Encrypt(BigInteger q, BigInteger a, BigInteger b, BigInteger[] g) {
+        domain = null;
         ecc = new ECC(q, a, b);
         if (!ecc.exist(g))
             throw new IllegalArgumentException("g does'n exist.");
         this.g = g;
     }
 
+    /**
+     * 用已检查过的参数构造，与使用同样参数的其他对象共用G的预计算表
+     *
+     * @param domain 椭圆曲线参数
+     */
+    public Encrypt(DomainParameters domain) {
+        this.domain = domain;
+        this.ecc = domain.getCurve();
+        this.g = domain.getG();
+    }
+
     /**
      * 椭圆曲线加密
      * 
@@ -28,9 +52,9 @@ public class Encrypt {
             throw new IllegalArgumentException("Message is illegal.");
         BigInteger[][] c = new BigInteger[2][2];
         // kg
-        c[0] = ecc.multiply(k, g);
+        c[0] = multiplyG(k);
         // m+kp
-        c[1] = ecc.add(m, ecc.multiply(k, p));
+        c[1] = ecc.add(m, multiply(k, p));
         return c;
     }
 
@@ -45,7 +69,179 @@ public class Encrypt {
         if (!ecc.exist(c[0]) || !ecc.exist(c[1]))
             throw new IllegalArgumentException("Cipher is illegal.");
         // m=c[1]-n*c[0]
-        return ecc.subtract(c[1], ecc.multiply(n, c[0]));
+        return ecc.subtract(c[1], multiply(n, c[0]));
+    }
+
+    /**
+     * 每个点能容纳的消息字节数
+     */
+    public int blockSize() {
+        // 横坐标为1 || 消息 || 8位计数器，要小于p
+        return (ecc.getP().bitLength() - 10) / 8;
+    }
+
+    /**
+     * 把消息编码为曲线上的点(Koblitz方法)
+     * 横坐标x=(1 || data)*256+j，依次尝试j=0, 1, ...直到x^3+ax+b为二次剩余，
+     * 每次尝试约有一半的概率成功，平均两次Legendre符号计算和一次开方
+     *
+     * @param data 消息，不超过blockSize()字节
+     * @return 点的坐标
+     */
+    public BigInteger[] encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    private BigInteger[] encode(byte[] data, int off, int len) {
+        if (blockSize() < 1)
+            throw new IllegalArgumentException("Curve is too small.");
+        if (len > blockSize())
+            throw new IllegalArgumentException("Message is too long.");
+        // 开头的1保留消息的前导0
+        byte[] b = new byte[len + 1];
+        b[0] = 1;
+        System.arraycopy(data, off, b, 1, len);
+        BigInteger base = new BigInteger(1, b).shiftLeft(8);
+        BigInteger p = ecc.getP();
+        for (int j = 0; j < TRIES; j++) {
+            BigInteger x = base.add(BigInteger.valueOf(j));
+            // x^3+ax+b
+            BigInteger y2 = x.multiply(x).add(ecc.getA()).multiply(x).add(ecc.getB()).mod(p);
+            if (ecc.legendre(y2) >= 0)
+                return new BigInteger[] { x, ecc.sqrt(y2) };
+        }
+        // 概率约为2^-256
+        throw new IllegalStateException();
+    }
+
+    /**
+     * 由encode得到的点恢复消息
+     *
+     * @param m 点的坐标
+     * @return 消息
+     */
+    public byte[] decode(BigInteger[] m) {
+        byte[] b = m[0].shiftRight(8).toByteArray();
+        if (b[0] != 1)
+            throw new IllegalArgumentException("Message is illegal.");
+        return Arrays.copyOfRange(b, 1, b.length);
+    }
+
+    /**
+     * 分块加密任意长度的消息
+     * 每blockSize()字节编码为一个点，每块使用不同的随机k，
+     * 所有块的kG和m+kP在Jacobian坐标下计算，最后共用一次求逆转为仿射坐标
+     *
+     * @param message 消息
+     * @param p       接收方公钥
+     * @return 每块的密文，形式与encrypt相同
+     */
+    public BigInteger[][][] encryptBlocks(byte[] message, BigInteger[] p) {
+        if (ECC.isZero(p) || !ecc.exist(p))
+            throw new IllegalArgumentException("Public key is illegal.");
+        int size = blockSize();
+        if (size < 1)
+            throw new IllegalArgumentException("Curve is too small.");
+        int count = (message.length + size - 1) / size;
+        // 知道G的阶时k<n，否则k<p
+        BigInteger bound = domain != null ? domain.getN() : ecc.getP();
+        Field f = ecc.field();
+        // 块数较多时为公钥P构造预计算表
+        boolean hardened = domain != null && domain.isHardened();
+        FixedBaseComb pComb = count > COMB_BLOCKS && !hardened ? new FixedBaseComb(ecc, p, bound.bitLength()) : null;
+        JacobianPoint pj = ecc.toJacobian(f, p);
+        SecureRandom random = ECDSA.random();
+        JacobianPoint[] t = new JacobianPoint[2 * count];
+        for (int i = 0; i < count; i++) {
+            int off = i * size;
+            BigInteger[] m = encode(message, off, Math.min(size, message.length - off));
+            BigInteger k;
+            do
+                k = new BigInteger(bound.bitLength(), random);
+            while (k.signum() == 0 || k.compareTo(bound) >= 0);
+            // kG
+            t[2 * i] = multiplyGJacobian(f, k);
+            // m+kP
+            JacobianPoint c;
+            if (hardened)
+                c = ecc.toJacobian(f, domain.multiply(k, p));
+            else if (pComb != null)
+                c = pComb.multiplyJacobian(f, k);
+            else
+                c = ecc.multiplyJacobian(f, k, pj, ECC.window(k.bitLength()));
+            ecc.addMixedInto(f, c, c, new int[][] { f.fromBigInteger(m[0]), f.fromBigInteger(m[1]) }, false);
+            t[2 * i + 1] = c;
+        }
+        BigInteger[][] affine = ecc.toAffineAll(f, t);
+        BigInteger[][][] c = new BigInteger[count][][];
+        for (int i = 0; i < count; i++)
+            c[i] = new BigInteger[][] { affine[2 * i], affine[2 * i + 1] };
+        return c;
+    }
+
+    /**
+     * 解密encryptBlocks的密文，所有块共用一次求逆
+     *
+     * @param c 每块的密文
+     * @param n 私钥
+     * @return 消息
+     */
+    public byte[] decryptBlocks(BigInteger[][][] c, BigInteger n) {
+        Field f = ecc.field();
+        JacobianPoint[] t = new JacobianPoint[c.length];
+        for (int i = 0; i < c.length; i++) {
+            if (!ecc.exist(c[i][0]) || !ecc.exist(c[i][1]))
+                throw new IllegalArgumentException("Cipher is illegal.");
+            // m=c[1]-n*c[0]
+            JacobianPoint s = domain != null && domain.isHardened()
+                    ? ecc.toJacobian(f, domain.multiply(n, c[i][0]))
+                    : ecc.multiplyJacobian(f, n, ecc.toJacobian(f, c[i][0]), ECC.window(n.bitLength()));
+            ecc.negateInto(f, s, s);
+            ecc.addInto(f, s, s, ecc.toJacobian(f, c[i][1]));
+            t[i] = s;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(c.length * blockSize());
+        for (BigInteger[] m : ecc.toAffineAll(f, t))
+            out.writeBytes(decode(m));
+        return out.toByteArray();
+    }
+
+    /**
+     * 计算kG
+     */
+    private BigInteger[] multiplyG(BigInteger k) {
+        if (domain != null)
+            return domain.multiplyG(k);
+        return comb().multiply(k);
+    }
+
+    /**
+     * 计算kC，k为秘密的随机数或私钥
+     */
+    private BigInteger[] multiply(BigInteger k, BigInteger[] c) {
+        if (domain != null)
+            return domain.multiply(k, c);
+        return ecc.multiply(k, c);
+    }
+
+    /**
+     * Jacobian坐标下的kG
+     */
+    private JacobianPoint multiplyGJacobian(Field f, BigInteger k) {
+        if (domain != null)
+            return domain.multiplyGJacobian(f, k);
+        return comb().multiplyJacobian(f, k);
+    }
+
+    /**
+     * G的预计算表，第一次使用时构造
+     */
+    private FixedBaseComb comb() {
+        FixedBaseComb t = comb;
+        // 并发时可能重复构造，但表是不可变的，不影响结果
+        if (t == null)
+            comb = t = new FixedBaseComb(ecc, g, ecc.getP().bitLength() + 1);
+        return t;
     }
 
     public static void main(String[] args) {
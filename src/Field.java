@@ -0,0 +1,238 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * 素数域GF(p)上的定长多字运算
+ * 元素用小端的32位字数组int[]表示，始终约简到[0, p)，
+ * 运算结果写入调用方给出的数组，不产生新对象。
+ * 实例中有临时缓冲区，不能在线程间共享。
+ */
+abstract class Field {
+    static final long MASK = 0xFFFFFFFFL;
+
+    // 模数
+    final BigInteger p;
+    // 字数
+    final int len;
+    // 模数的各个字
+    final int[] pLimbs;
+    // 域表示下的1
+    final int[] one;
+    // 点运算公式使用的临时元素
+    final int[][] temp;
+    // 条件减p使用的临时元素
+    private final int[] spare;
+    // 0
+    private final int[] zero;
+
+    Field(BigInteger p) {
+        this(p, BigInteger.ONE);
+    }
+
+    /**
+     * @param p   模数
+     * @param one 1在域表示下对应的整数
+     */
+    Field(BigInteger p, BigInteger one) {
+        if (p.signum() <= 0 || !p.testBit(0))
+            throw new IllegalArgumentException();
+        this.p = p;
+        this.len = limbs(p);
+        this.pLimbs = toLimbs(p, len);
+        this.one = toLimbs(one, len);
+        this.temp = new int[8][len];
+        this.spare = new int[len];
+        this.zero = new int[len];
+    }
+
+    /**
+     * 根据模数选择实现，P-256和secp256k1使用专门的快速约简，其余使用Montgomery乘法
+     */
+    static Field of(BigInteger p) {
+        if (p.equals(P256Field.P))
+            return new P256Field();
+        else if (p.equals(Secp256k1Field.P))
+            return new Secp256k1Field();
+        else
+            return new MontgomeryField(p);
+    }
+
+    /**
+     * r=a*b mod p
+     */
+    abstract void mul(int[] r, int[] a, int[] b);
+
+    /**
+     * r=a^2 mod p
+     */
+    void sqr(int[] r, int[] a) {
+        mul(r, a, a);
+    }
+
+    /**
+     * 新建一个值为0的元素
+     */
+    int[] create() {
+        return new int[len];
+    }
+
+    /**
+     * BigInteger转域元素
+     */
+    int[] fromBigInteger(BigInteger x) {
+        return toLimbs(x.mod(p), len);
+    }
+
+    /**
+     * 域元素转BigInteger
+     */
+    BigInteger toBigInteger(int[] a) {
+        return fromLimbs(a);
+    }
+
+    /**
+     * r=a^(-1) mod p，a不能为0
+     */
+    void inv(int[] r, int[] a) {
+        if (Metrics.ENABLED)
+            Metrics.FIELD_INVERSIONS.increment();
+        set(r, fromBigInteger(toBigInteger(a).modInverse(p)));
+    }
+
+    /**
+     * r=a+b mod p
+     */
+    void add(int[] r, int[] a, int[] b) {
+        long c = 0;
+        for (int i = 0; i < len; i++) {
+            c += (a[i] & MASK) + (b[i] & MASK);
+            r[i] = (int) c;
+            c >>>= 32;
+        }
+        // 溢出或r>=p时减去p
+        reduceOnce(r, c);
+    }
+
+    /**
+     * r=a-b mod p
+     */
+    void sub(int[] r, int[] a, int[] b) {
+        long c = 0;
+        for (int i = 0; i < len; i++) {
+            c += (a[i] & MASK) - (b[i] & MASK);
+            r[i] = (int) c;
+            c >>= 32;
+        }
+        // 结果为负时加上p，用掩码代替分支
+        long mask = c & MASK;
+        c = 0;
+        for (int i = 0; i < len; i++) {
+            c += (r[i] & MASK) + (pLimbs[i] & mask);
+            r[i] = (int) c;
+            c >>>= 32;
+        }
+    }
+
+    /**
+     * r=-a mod p
+     */
+    void neg(int[] r, int[] a) {
+        sub(r, zero, a);
+    }
+
+    /**
+     * 若有进位c或r>=p则r=r-p，r<2p
+     * 总是计算r-p再按掩码选择，运行时间与数据无关
+     */
+    void reduceOnce(int[] r, long c) {
+        long borrow = 0;
+        for (int i = 0; i < len; i++) {
+            borrow += (r[i] & MASK) - (pLimbs[i] & MASK);
+            spare[i] = (int) borrow;
+            borrow >>= 32;
+        }
+        // 有进位或没有借位时取r-p
+        int mask = (int) -c | ~(int) borrow;
+        for (int i = 0; i < len; i++)
+            r[i] = (spare[i] & mask) | (r[i] & ~mask);
+    }
+
+    /**
+     * bit为1时交换a和b，bit为0时不变，运行时间与bit无关
+     */
+    void cswap(int[] a, int[] b, int bit) {
+        int mask = -bit;
+        for (int i = 0; i < len; i++) {
+            int t = mask & (a[i] ^ b[i]);
+            a[i] ^= t;
+            b[i] ^= t;
+        }
+    }
+
+    /**
+     * r=a
+     */
+    void set(int[] r, int[] a) {
+        System.arraycopy(a, 0, r, 0, len);
+    }
+
+    boolean isZero(int[] a) {
+        int x = 0;
+        for (int i = 0; i < len; i++)
+            x |= a[i];
+        return x == 0;
+    }
+
+    boolean equals(int[] a, int[] b) {
+        int x = 0;
+        for (int i = 0; i < len; i++)
+            x |= a[i] ^ b[i];
+        return x == 0;
+    }
+
+    /**
+     * 模数p需要的字数
+     */
+    static int limbs(BigInteger p) {
+        return (p.bitLength() + 31) / 32;
+    }
+
+    /**
+     * t=a*b，t的长度为a、b长度之和
+     */
+    static void multiplyFull(int[] t, int[] a, int[] b) {
+        int n = a.length;
+        Arrays.fill(t, 0);
+        for (int i = 0; i < n; i++) {
+            long ai = a[i] & MASK;
+            long c = 0;
+            for (int j = 0; j < n; j++) {
+                c += ai * (b[j] & MASK) + (t[i + j] & MASK);
+                t[i + j] = (int) c;
+                c >>>= 32;
+            }
+            t[i + n] = (int) c;
+        }
+    }
+
+    /**
+     * 非负BigInteger转小端32位字数组
+     */
+    static int[] toLimbs(BigInteger x, int len) {
+        int[] r = new int[len];
+        byte[] b = x.toByteArray();
+        for (int i = 0; i < b.length && i < 4 * len; i++)
+            r[i >>> 2] |= (b[b.length - 1 - i] & 0xFF) << ((i & 3) << 3);
+        return r;
+    }
+
+    /**
+     * 小端32位字数组转非负BigInteger
+     */
+    static BigInteger fromLimbs(int[] a) {
+        byte[] b = new byte[4 * a.length];
+        for (int i = 0; i < b.length; i++)
+            b[b.length - 1 - i] = (byte) (a[i >>> 2] >>> ((i & 3) << 3));
+        return new BigInteger(1, b);
+    }
+}
@@ -0,0 +1,101 @@
+import java.math.BigInteger;
+
+/**
+ * 固定基点的梳状(comb)预计算表
+ * 把k的二进制按列分成w行d列，预先算好每一列可能组合的点，
+ * 计算kG时只需要d次倍点和至多d次查表加法
+ */
+public class FixedBaseComb {
+    // 所在的椭圆曲线
+    private final ECC ecc;
+    // 基点
+    private final BigInteger[] g;
+    // 支持的倍数的最大位数
+    private final int bits;
+    // 梳齿数
+    private final int w;
+    // 每个梳齿覆盖的位数，d=ceil(bits/w)
+    private final int d;
+    // table[i]=sum(2^(jd)G)，j取i的各个为1的位，域表示下的仿射坐标，零点为null
+    private final int[][][] table;
+
+    /**
+     * 构造基点G的预计算表
+     *
+     * @param ecc  椭圆曲线
+     * @param g    基点G
+     * @param bits 倍数的最大位数(一般为G的阶的位数)
+     */
+    public FixedBaseComb(ECC ecc, BigInteger[] g, int bits) {
+        this(ecc, g, bits, bits <= 64 ? 4 : 6);
+    }
+
+    /**
+     * 构造基点G的预计算表
+     *
+     * @param ecc  椭圆曲线
+     * @param g    基点G
+     * @param bits 倍数的最大位数(一般为G的阶的位数)
+     * @param w    梳齿数，表的大小为2^w
+     */
+    public FixedBaseComb(ECC ecc, BigInteger[] g, int bits, int w) {
+        if (!ecc.exist(g) || ECC.isZero(g) || bits < 1 || w < 1 || w > 10)
+            throw new IllegalArgumentException();
+        this.ecc = ecc;
+        this.g = g;
+        this.bits = bits;
+        this.w = w;
+        this.d = (bits + w - 1) / w;
+        Field f = ecc.field();
+        // base[j]=2^(jd)G
+        JacobianPoint[] base = new JacobianPoint[w];
+        base[0] = ecc.toJacobian(f, g);
+        for (int j = 1; j < w; j++) {
+            base[j] = base[j - 1].copy(f);
+            for (int i = 0; i < d; i++)
+                ecc.twiceInto(f, base[j], base[j]);
+        }
+        JacobianPoint[] t = new JacobianPoint[1 << w];
+        t[0] = new JacobianPoint(f);
+        for (int i = 1; i < t.length; i++) {
+            int high = 31 - Integer.numberOfLeadingZeros(i);
+            t[i] = new JacobianPoint(f);
+            ecc.addInto(f, t[i], t[i ^ (1 << high)], base[high]);
+        }
+        table = ecc.normalizeAll(f, t);
+    }
+
+    /**
+     * 计算kG
+     *
+     * @param k 倍数
+     * @return 结果坐标
+     */
+    public BigInteger[] multiply(BigInteger k) {
+        if (k.signum() <= 0)
+            throw new IllegalArgumentException();
+        Field f = ecc.field();
+        return ecc.toAffine(f, multiplyJacobian(f, k));
+    }
+
+    /**
+     * 计算kG，结果为Jacobian坐标
+     */
+    JacobianPoint multiplyJacobian(Field f, BigInteger k) {
+        // 超出表的范围，退回到普通数乘
+        if (k.bitLength() > bits)
+            return ecc.multiplyJacobian(f, k, ecc.toJacobian(f, g), ECC.window(k.bitLength()));
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        JacobianPoint q = new JacobianPoint(f);
+        for (int col = d - 1; col >= 0; col--) {
+            ecc.twiceInto(f, q, q);
+            int index = 0;
+            for (int j = w - 1; j >= 0; j--)
+                index = (index << 1) | (k.testBit(j * d + col) ? 1 : 0);
+            if (index != 0)
+                ecc.addMixedInto(f, q, q, table[index], false);
+        }
+        return q;
+    }
+}
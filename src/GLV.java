@@ -0,0 +1,158 @@
+import java.math.BigInteger;
+
+/**
+ * GLV自同态加速
+ * a=0且p≡1 (mod 3)的曲线有自同态φ(x, y)=(βx, y)，β为模p的三次单位根，
+ * 对阶为n的点有φ(P)=λP，λ为模n的三次单位根。
+ * 把k分解为k≡k1+k2λ (mod n)，k1, k2约为n的一半长，同时计算k1P+k2φ(P)，倍点次数减半。
+ * 要求曲线上所有点的阶都是n(余因子为1)，否则φ(P)=λP不一定成立
+ */
+final class GLV {
+    // 两半倍数的wNAF窗口宽度
+    private static final int W = 5;
+
+    private final ECC ecc;
+    // 基点的阶
+    private final BigInteger n;
+    // 域表示下的β
+    private final int[] beta;
+    // 格基(a1, b1), (a2, b2)，满足a+bλ≡0 (mod n)
+    private final BigInteger a1;
+    private final BigInteger b1;
+    private final BigInteger a2;
+    private final BigInteger b2;
+
+    private GLV(ECC ecc, BigInteger n, BigInteger beta, BigInteger lambda) {
+        this.ecc = ecc;
+        this.n = n;
+        this.beta = ecc.field().fromBigInteger(beta);
+        // 对(n, λ)做扩展欧几里得算法，r_i=s_i*n+t_i*λ
+        BigInteger sqrtN = n.sqrt();
+        BigInteger r0 = n, t0 = BigInteger.ZERO;
+        BigInteger r1 = lambda, t1 = BigInteger.ONE;
+        // 找最大的l使r_l>=sqrt(n)，此时r0=r_l, r1=r_(l+1)
+        while (r1.compareTo(sqrtN) >= 0) {
+            BigInteger q = r0.divide(r1);
+            BigInteger r2 = r0.subtract(q.multiply(r1)), t2 = t0.subtract(q.multiply(t1));
+            r0 = r1;
+            t0 = t1;
+            r1 = r2;
+            t1 = t2;
+        }
+        BigInteger q = r0.divide(r1);
+        BigInteger r2 = r0.subtract(q.multiply(r1)), t2 = t0.subtract(q.multiply(t1));
+        a1 = r1;
+        b1 = t1.negate();
+        // (r_l, -t_l)和(r_(l+2), -t_(l+2))中取较短的一个
+        if (r0.pow(2).add(t0.pow(2)).compareTo(r2.pow(2).add(t2.pow(2))) <= 0) {
+            a2 = r0;
+            b2 = t0.negate();
+        } else {
+            a2 = r2;
+            b2 = t2.negate();
+        }
+    }
+
+    /**
+     * 检查曲线是否支持GLV加速
+     *
+     * @param ecc 椭圆曲线
+     * @param g   基点G
+     * @param n   基点G的阶
+     * @return 不支持时返回null
+     */
+    static GLV of(ECC ecc, BigInteger[] g, BigInteger n) {
+        BigInteger p = ecc.getP();
+        BigInteger three = BigInteger.valueOf(3);
+        if (ecc.getA().mod(p).signum() != 0 || !p.mod(three).equals(BigInteger.ONE)
+                || !n.mod(three).equals(BigInteger.ONE))
+            return null;
+        // 曲线的阶不超过p+1+2sqrt(p)，小于2n时只能等于n，余因子为1
+        if (n.shiftLeft(1).compareTo(p.add(BigInteger.ONE).add(p.sqrt().add(BigInteger.ONE).shiftLeft(1))) <= 0)
+            return null;
+        BigInteger beta = cubeRoot(p);
+        BigInteger lambda = cubeRoot(n);
+        BigInteger[] lg = ecc.multiplyNAF(lambda, g, ECC.window(lambda.bitLength()));
+        // β和β^2中只有一个与λ对应
+        for (int i = 0; i < 2; i++, beta = beta.multiply(beta).mod(p))
+            if (lg[0].equals(beta.multiply(g[0]).mod(p)) && lg[1].equals(g[1]))
+                return new GLV(ecc, n, beta, lambda);
+        return null;
+    }
+
+    /**
+     * 模素数m的一个非平凡三次单位根，要求m≡1 (mod 3)
+     */
+    private static BigInteger cubeRoot(BigInteger m) {
+        BigInteger e = m.subtract(BigInteger.ONE).divide(BigInteger.valueOf(3));
+        for (BigInteger c = BigInteger.TWO;; c = c.add(BigInteger.ONE)) {
+            BigInteger r = c.modPow(e, m);
+            if (!r.equals(BigInteger.ONE))
+                return r;
+        }
+    }
+
+    /**
+     * 分解k≡k1+k2λ (mod n)，|k1|, |k2|约为sqrt(n)
+     *
+     * @param k 倍数，0 <= k < n
+     * @return k1, k2
+     */
+    BigInteger[] decompose(BigInteger k) {
+        BigInteger c1 = round(b2.multiply(k));
+        BigInteger c2 = round(b1.negate().multiply(k));
+        BigInteger k1 = k.subtract(c1.multiply(a1)).subtract(c2.multiply(a2));
+        BigInteger k2 = c1.multiply(b1).add(c2.multiply(b2)).negate();
+        return new BigInteger[] { k1, k2 };
+    }
+
+    /**
+     * x/n四舍五入到最近的整数
+     */
+    private BigInteger round(BigInteger x) {
+        BigInteger[] qr = x.shiftLeft(1).add(n).divideAndRemainder(n.shiftLeft(1));
+        // divide向0取整，负数要向下取整
+        return qr[1].signum() < 0 ? qr[0].subtract(BigInteger.ONE) : qr[0];
+    }
+
+    /**
+     * Jacobian坐标下的kC
+     * k1, k2的wNAF交错计算，共用倍点；φ(C)的奇数倍表由C的表的横坐标乘β得到，不需要另算
+     *
+     * @param f 域运算对象
+     * @param k 倍数
+     * @param c 曲线上的点
+     */
+    JacobianPoint multiplyJacobian(Field f, BigInteger k, JacobianPoint c) {
+        k = k.mod(n);
+        JacobianPoint q = new JacobianPoint(f);
+        if (c.infinity || k.signum() == 0)
+            return q;
+        if (Metrics.ENABLED)
+            Metrics.SCALAR_MULTIPLICATIONS.increment();
+        BigInteger[] k12 = decompose(k);
+        int[] naf1 = ECC.naf(k12[0].abs(), W);
+        int[] naf2 = ECC.naf(k12[1].abs(), W);
+        // C, 3C, ..., (2^(W-1)-1)C和对应的φ
+        int[][][] t1 = ecc.normalizeAll(f, ecc.oddMultiples(f, c, 1 << (W - 2)));
+        int[][][] t2 = new int[t1.length][][];
+        for (int i = 0; i < t1.length; i++) {
+            int[] x = f.create();
+            f.mul(x, t1[i][0], beta);
+            t2[i] = new int[][] { x, t1[i][1] };
+        }
+        // 负的部分改为对点取负
+        boolean neg1 = k12[0].signum() < 0;
+        boolean neg2 = k12[1].signum() < 0;
+        for (int i = Math.max(naf1.length, naf2.length) - 1; i >= 0; i--) {
+            ecc.twiceInto(f, q, q);
+            int d1 = i < naf1.length ? naf1[i] : 0;
+            int d2 = i < naf2.length ? naf2[i] : 0;
+            if (d1 != 0)
+                ecc.addMixedInto(f, q, q, t1[Math.abs(d1) >> 1], (d1 < 0) != neg1);
+            if (d2 != 0)
+                ecc.addMixedInto(f, q, q, t2[Math.abs(d2) >> 1], (d2 < 0) != neg2);
+        }
+        return q;
+    }
+}
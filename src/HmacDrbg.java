@@ -0,0 +1,118 @@
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * RFC 6979的确定性k：以私钥和消息摘要为种子的HMAC_DRBG
+ * 同样的私钥和消息总是得到同样的k序列，不需要随机数生成器
+ */
+final class HmacDrbg {
+    // 每个线程每种算法一个Mac对象
+    private static final ThreadLocal<HashMap<String, Mac>> MACS = ThreadLocal.withInitial(HashMap::new);
+
+    private final Mac mac;
+    // 基点的阶
+    private final BigInteger n;
+    // n的位数qlen
+    private final int qlen;
+    // 状态K, V
+    private byte[] k;
+    private byte[] v;
+
+    /**
+     * @param algorithm HMAC算法，与签名使用的摘要算法一致，如HmacSHA256
+     * @param n         基点的阶
+     * @param d         私钥
+     * @param e         消息摘要经bits2int截断后的整数
+     */
+    HmacDrbg(String algorithm, BigInteger n, BigInteger d, BigInteger e) {
+        this.mac = mac(algorithm);
+        this.n = n;
+        this.qlen = n.bitLength();
+        int hlen = mac.getMacLength();
+        // bits2octets(h1)=int2octets(bits2int(h1) mod n)
+        byte[] x = int2octets(d);
+        byte[] h = int2octets(e.mod(n));
+        v = new byte[hlen];
+        Arrays.fill(v, (byte) 1);
+        k = new byte[hlen];
+        // K=HMAC_K(V || 0x00 || x || h), V=HMAC_K(V)
+        k = hmac(v, new byte[] { 0 }, x, h);
+        v = hmac(v);
+        // K=HMAC_K(V || 0x01 || x || h), V=HMAC_K(V)
+        k = hmac(v, new byte[] { 1 }, x, h);
+        v = hmac(v);
+    }
+
+    /**
+     * 下一个1<=k<=n-1，签名得到r=0或s=0时继续调用
+     */
+    BigInteger next() {
+        while (true) {
+            byte[] t = new byte[(qlen + 7) / 8];
+            for (int off = 0; off < t.length;) {
+                v = hmac(v);
+                int len = Math.min(v.length, t.length - off);
+                System.arraycopy(v, 0, t, off, len);
+                off += len;
+            }
+            BigInteger result = bits2int(new BigInteger(1, t), 8 * t.length);
+            // K=HMAC_K(V || 0x00), V=HMAC_K(V)，为下一个k更新状态
+            k = hmac(v, new byte[] { 0 });
+            v = hmac(v);
+            if (result.signum() > 0 && result.compareTo(n) < 0)
+                return result;
+            if (Metrics.ENABLED)
+                Metrics.NONCE_RETRIES.increment();
+        }
+    }
+
+    /**
+     * 取blen位的整数的高qlen位
+     */
+    private BigInteger bits2int(BigInteger b, int blen) {
+        return blen > qlen ? b.shiftRight(blen - qlen) : b;
+    }
+
+    /**
+     * 非负整数转ceil(qlen/8)字节的大端字节串
+     */
+    private byte[] int2octets(BigInteger x) {
+        byte[] b = x.toByteArray();
+        byte[] result = new byte[(qlen + 7) / 8];
+        int len = Math.min(b.length, result.length);
+        System.arraycopy(b, b.length - len, result, result.length - len, len);
+        return result;
+    }
+
+    /**
+     * 以K为密钥计算各段数据连接后的HMAC
+     */
+    private byte[] hmac(byte[]... data) {
+        try {
+            mac.init(new SecretKeySpec(k, mac.getAlgorithm()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        for (byte[] b : data)
+            mac.update(b);
+        return mac.doFinal();
+    }
+
+    /**
+     * 当前线程的Mac对象
+     */
+    private static Mac mac(String algorithm) {
+        return MACS.get().computeIfAbsent(algorithm, a -> {
+            try {
+                return Mac.getInstance(a);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException(e);
+            }
+        });
+    }
+}
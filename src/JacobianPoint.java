@@ -0,0 +1,73 @@
+/**
+ * 可变的Jacobian坐标点(X, Y, Z)，x=X/Z^2，y=Y/Z^3
+ * 坐标为域表示，零点用infinity标记，运算结果直接写入已有的点，不产生新对象
+ */
+final class JacobianPoint {
+    final int[] x;
+    final int[] y;
+    final int[] z;
+    // 是否为零点
+    boolean infinity;
+
+    /**
+     * 新建一个零点
+     */
+    JacobianPoint(Field f) {
+        x = f.create();
+        y = f.create();
+        z = f.create();
+        infinity = true;
+    }
+
+    /**
+     * 新建仿射坐标为(x, y)的点
+     */
+    JacobianPoint(Field f, int[] x, int[] y) {
+        this(f);
+        setAffine(f, x, y);
+    }
+
+    /**
+     * 设为零点
+     */
+    void setInfinity() {
+        infinity = true;
+    }
+
+    /**
+     * 设为仿射坐标为(x, y)的点，null表示零点
+     */
+    void setAffine(Field f, int[] x, int[] y) {
+        if (x == null) {
+            infinity = true;
+            return;
+        }
+        f.set(this.x, x);
+        f.set(this.y, y);
+        f.set(this.z, f.one);
+        infinity = false;
+    }
+
+    /**
+     * 复制点c
+     */
+    void set(Field f, JacobianPoint c) {
+        if (c == this)
+            return;
+        infinity = c.infinity;
+        if (!infinity) {
+            f.set(x, c.x);
+            f.set(y, c.y);
+            f.set(z, c.z);
+        }
+    }
+
+    /**
+     * 复制一个新点
+     */
+    JacobianPoint copy(Field f) {
+        JacobianPoint r = new JacobianPoint(f);
+        r.set(f, this);
+        return r;
+    }
+}
@@ -0,0 +1,229 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * 运算统计
+ * 用-Decc.metrics=true打开，打开时第一次使用就注册到平台MBeanServer(ecc:type=Metrics)。
+ * 埋点都写成if (Metrics.ENABLED) ...，ENABLED是static final，关闭时JIT直接去掉这些代码。
+ * 计数用LongAdder，延迟用对数线性分桶的直方图，都不加锁。
+ * 注册失败(如另一个类加载器已注册同名对象)只记录日志，统计照常进行，可以用get()读取
+ */
+public final class Metrics implements MetricsMXBean {
+    /**
+     * 是否统计，启动时由系统属性ecc.metrics决定
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("ecc.metrics");
+
+    static final LongAdder FIELD_INVERSIONS = new LongAdder();
+    static final LongAdder POINT_ADDITIONS = new LongAdder();
+    static final LongAdder POINT_DOUBLINGS = new LongAdder();
+    static final LongAdder SCALAR_MULTIPLICATIONS = new LongAdder();
+    static final LongAdder NONCE_RETRIES = new LongAdder();
+    static final Histogram MULTIPLY = new Histogram();
+    static final Histogram SIGN = new Histogram();
+    static final Histogram VERIFY = new Histogram();
+    static final Histogram KEY_AGREEMENT = new Histogram();
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("ecc:type=Metrics"));
+            } catch (JMException | RuntimeException e) {
+                // 统计不能影响运算，这里抛出异常会使所有检查ENABLED的类初始化失败
+                System.getLogger(Metrics.class.getName()).log(System.Logger.Level.WARNING,
+                        "Cannot register ecc:type=Metrics, metrics are only available through Metrics.get().", e);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public long getFieldInversions() {
+        return FIELD_INVERSIONS.sum();
+    }
+
+    @Override
+    public long getPointAdditions() {
+        return POINT_ADDITIONS.sum();
+    }
+
+    @Override
+    public long getPointDoublings() {
+        return POINT_DOUBLINGS.sum();
+    }
+
+    @Override
+    public long getScalarMultiplications() {
+        return SCALAR_MULTIPLICATIONS.sum();
+    }
+
+    @Override
+    public long getNonceRetries() {
+        return NONCE_RETRIES.sum();
+    }
+
+    @Override
+    public Histogram getMultiplyLatency() {
+        return MULTIPLY;
+    }
+
+    @Override
+    public Histogram getSignLatency() {
+        return SIGN;
+    }
+
+    @Override
+    public Histogram getVerifyLatency() {
+        return VERIFY;
+    }
+
+    @Override
+    public Histogram getKeyAgreementLatency() {
+        return KEY_AGREEMENT;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder c : new LongAdder[] { FIELD_INVERSIONS, POINT_ADDITIONS, POINT_DOUBLINGS,
+                SCALAR_MULTIPLICATIONS, NONCE_RETRIES })
+            c.reset();
+        for (Histogram h : new Histogram[] { MULTIPLY, SIGN, VERIFY, KEY_AGREEMENT })
+            h.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("inversions=%d, additions=%d, doublings=%d, multiplications=%d, nonceRetries=%d%n",
+                getFieldInversions(), getPointAdditions(), getPointDoublings(), getScalarMultiplications(),
+                getNonceRetries()));
+        String[] names = { "multiply", "sign", "verify", "keyAgreement" };
+        Histogram[] histograms = { MULTIPLY, SIGN, VERIFY, KEY_AGREEMENT };
+        for (int i = 0; i < names.length; i++)
+            sb.append(String.format("%-12s %s%n", names[i], histograms[i]));
+        return sb.toString();
+    }
+
+    /**
+     * 延迟直方图(纳秒)
+     * 小于2^SUB_BITS的值每个值一个桶，更大的值按最高位所在的2的幂分组，每组再等分2^SUB_BITS个桶，
+     * 相对误差不超过2^-SUB_BITS(约6%)，桶数固定，记录一次只做一次原子加
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 4;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(SUB + (64 - SUB_BITS) * SUB);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * 记录一次延迟
+         *
+         * @param nanos 纳秒
+         */
+        void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            buckets.incrementAndGet(index(nanos));
+            count.increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        private static int index(long v) {
+            if (v < SUB)
+                return (int) v;
+            // v的最高位为第e位，取其后的SUB_BITS位作为组内的桶号
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            return SUB + (e - SUB_BITS) * SUB + (int) ((v >>> (e - SUB_BITS)) & (SUB - 1));
+        }
+
+        /**
+         * 桶的上界
+         */
+        private static long upper(int i) {
+            if (i < SUB)
+                return i;
+            int e = (i - SUB) / SUB + SUB_BITS;
+            long low = (long) (SUB + (i - SUB) % SUB) << (e - SUB_BITS);
+            return low + (1L << (e - SUB_BITS)) - 1;
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++)
+                buckets.set(i, 0);
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMeanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        public long getP50Nanos() {
+            return percentile(0.5);
+        }
+
+        public long getP90Nanos() {
+            return percentile(0.9);
+        }
+
+        public long getP99Nanos() {
+            return percentile(0.99);
+        }
+
+        public long getP999Nanos() {
+            return percentile(0.999);
+        }
+
+        /**
+         * 第q分位数，返回所在桶的上界，不超过最大值
+         */
+        public long percentile(double q) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++)
+                total += snapshot[i] = buckets.get(i);
+            if (total == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            for (int i = 0; i < snapshot.length; i++) {
+                rank -= snapshot[i];
+                if (rank <= 0)
+                    return Math.min(upper(i), getMaxNanos());
+            }
+            return getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus", getCount(),
+                    getMeanNanos() / 1e3, getP50Nanos() / 1e3, getP99Nanos() / 1e3, getP999Nanos() / 1e3,
+                    getMaxNanos() / 1e3);
+        }
+    }
+}
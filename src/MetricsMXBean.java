@@ -0,0 +1,54 @@
+/**
+ * 通过JMX导出的运算统计，对象名为ecc:type=Metrics
+ */
+public interface MetricsMXBean {
+    /**
+     * 域上的求逆次数
+     */
+    long getFieldInversions();
+
+    /**
+     * 点加次数(包括混合加法和完备加法)
+     */
+    long getPointAdditions();
+
+    /**
+     * 倍点次数
+     */
+    long getPointDoublings();
+
+    /**
+     * 数乘次数(包括联合数乘和固定基点数乘)
+     */
+    long getScalarMultiplications();
+
+    /**
+     * 签名时因k超出范围或r, s为0而重取k的次数
+     */
+    long getNonceRetries();
+
+    /**
+     * ECC.multiply的延迟
+     */
+    Metrics.Histogram getMultiplyLatency();
+
+    /**
+     * 签名的延迟
+     */
+    Metrics.Histogram getSignLatency();
+
+    /**
+     * 验证签名的延迟
+     */
+    Metrics.Histogram getVerifyLatency();
+
+    /**
+     * 密钥交换计算秘密钥的延迟
+     */
+    Metrics.Histogram getKeyAgreementLatency();
+
+    /**
+     * 所有计数和直方图清零
+     */
+    void reset();
+}
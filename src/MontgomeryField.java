@@ -0,0 +1,68 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * 任意奇素数模数的域，元素以Montgomery形式aR mod p保存，R=2^(32*len)
+ * 乘法使用CIOS算法，约简只需乘法和移位，不需要除法
+ */
+class MontgomeryField extends Field {
+    // R mod p
+    private final BigInteger r;
+    // R^(-1) mod p
+    private final BigInteger rInv;
+    // -p^(-1) mod 2^32
+    private final long n0;
+    // 乘法的临时缓冲区
+    private final int[] t;
+
+    MontgomeryField(BigInteger p) {
+        super(p, BigInteger.ONE.shiftLeft(32 * limbs(p)).mod(p));
+        this.r = BigInteger.ONE.shiftLeft(32 * len).mod(p);
+        this.rInv = r.modInverse(p);
+        this.n0 = p.negate().modInverse(BigInteger.ONE.shiftLeft(32)).longValue();
+        this.t = new int[len + 2];
+    }
+
+    @Override
+    void mul(int[] r, int[] a, int[] b) {
+        int[] t = this.t;
+        Arrays.fill(t, 0);
+        for (int i = 0; i < len; i++) {
+            // t=t+a*b[i]
+            long bi = b[i] & MASK;
+            long c = 0;
+            for (int j = 0; j < len; j++) {
+                c += (t[j] & MASK) + (a[j] & MASK) * bi;
+                t[j] = (int) c;
+                c >>>= 32;
+            }
+            c += t[len] & MASK;
+            t[len] = (int) c;
+            t[len + 1] = (int) (c >>> 32);
+            // t=(t+m*p)/2^32，m使最低字为0
+            long m = ((t[0] & MASK) * n0) & MASK;
+            c = ((t[0] & MASK) + m * (pLimbs[0] & MASK)) >>> 32;
+            for (int j = 1; j < len; j++) {
+                c += (t[j] & MASK) + m * (pLimbs[j] & MASK);
+                t[j - 1] = (int) c;
+                c >>>= 32;
+            }
+            c += t[len] & MASK;
+            t[len - 1] = (int) c;
+            t[len] = t[len + 1] + (int) (c >>> 32);
+        }
+        System.arraycopy(t, 0, r, 0, len);
+        // 结果小于2p，最多减一次
+        reduceOnce(r, t[len] & MASK);
+    }
+
+    @Override
+    int[] fromBigInteger(BigInteger x) {
+        return toLimbs(x.multiply(r).mod(p), len);
+    }
+
+    @Override
+    BigInteger toBigInteger(int[] a) {
+        return fromLimbs(a).multiply(rInv).mod(p);
+    }
+}
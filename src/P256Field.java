@@ -0,0 +1,66 @@
+import java.math.BigInteger;
+
+/**
+ * NIST P-256的素数域，p=2^256-2^224+2^192+2^96-1
+ * 使用FIPS 186中的Solinas快速约简，不需要除法
+ */
+class P256Field extends Field {
+    static final BigInteger P = new BigInteger(
+            "ffffffff00000001000000000000000000000000ffffffffffffffffffffffff", 16);
+
+    // 乘积的临时缓冲区
+    private final int[] t = new int[16];
+
+    P256Field() {
+        super(P);
+    }
+
+    @Override
+    void mul(int[] r, int[] a, int[] b) {
+        multiplyFull(t, a, b);
+        reduce(r, t);
+    }
+
+    /**
+     * r=c mod p，c为512位
+     */
+    private void reduce(int[] r, int[] c) {
+        long c0 = c[0] & MASK, c1 = c[1] & MASK, c2 = c[2] & MASK, c3 = c[3] & MASK;
+        long c4 = c[4] & MASK, c5 = c[5] & MASK, c6 = c[6] & MASK, c7 = c[7] & MASK;
+        long c8 = c[8] & MASK, c9 = c[9] & MASK, c10 = c[10] & MASK, c11 = c[11] & MASK;
+        long c12 = c[12] & MASK, c13 = c[13] & MASK, c14 = c[14] & MASK, c15 = c[15] & MASK;
+        // s1+2s2+2s3+s4+s5-d1-d2-d3-d4，逐字计算并进位
+        long carry = c0 + c8 + c9 - c11 - c12 - c13 - c14;
+        r[0] = (int) carry;
+        carry = (carry >> 32) + c1 + c9 + c10 - c12 - c13 - c14 - c15;
+        r[1] = (int) carry;
+        carry = (carry >> 32) + c2 + c10 + c11 - c13 - c14 - c15;
+        r[2] = (int) carry;
+        carry = (carry >> 32) + c3 + 2 * c11 + 2 * c12 + c13 - c15 - c8 - c9;
+        r[3] = (int) carry;
+        carry = (carry >> 32) + c4 + 2 * c12 + 2 * c13 + c14 - c9 - c10;
+        r[4] = (int) carry;
+        carry = (carry >> 32) + c5 + 2 * c13 + 2 * c14 + c15 - c10 - c11;
+        r[5] = (int) carry;
+        carry = (carry >> 32) + c6 + 3 * c14 + 2 * c15 + c13 - c8 - c9;
+        r[6] = (int) carry;
+        carry = (carry >> 32) + c7 + 3 * c15 + c8 - c10 - c11 - c12 - c13;
+        r[7] = (int) carry;
+        carry >>= 32;
+        // 高位的carry*2^256=carry*(2^224-2^192-2^96+1)
+        while (carry != 0) {
+            long k = carry;
+            carry = 0;
+            for (int i = 0; i < 8; i++) {
+                carry += r[i] & MASK;
+                if (i == 0 || i == 7)
+                    carry += k;
+                else if (i == 3 || i == 6)
+                    carry -= k;
+                r[i] = (int) carry;
+                carry >>= 32;
+            }
+        }
+        reduceOnce(r, 0);
+    }
+}
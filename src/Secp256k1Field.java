@@ -0,0 +1,55 @@
+import java.math.BigInteger;
+
+/**
+ * secp256k1的素数域，p=2^256-2^32-977
+ * 伪梅森素数，2^256=2^32+977 (mod p)
+ */
+class Secp256k1Field extends Field {
+    static final BigInteger P = new BigInteger(
+            "fffffffffffffffffffffffffffffffffffffffffffffffffffffffefffffc2f", 16);
+
+    // 乘积的临时缓冲区
+    private final int[] t = new int[16];
+
+    Secp256k1Field() {
+        super(P);
+    }
+
+    @Override
+    void mul(int[] r, int[] a, int[] b) {
+        multiplyFull(t, a, b);
+        reduce(r, t);
+    }
+
+    /**
+     * r=c mod p，c为512位
+     */
+    private void reduce(int[] r, int[] c) {
+        // 低256位+高256位*(2^32+977)
+        long carry = 0;
+        for (int i = 0; i < 8; i++) {
+            carry += (c[i] & MASK) + (c[i + 8] & MASK) * 977;
+            if (i > 0)
+                carry += c[i + 7] & MASK;
+            r[i] = (int) carry;
+            carry >>>= 32;
+        }
+        carry += c[15] & MASK;
+        // 再把溢出的部分折叠回来
+        while (carry != 0) {
+            long k = carry;
+            carry = (r[0] & MASK) + k * 977;
+            r[0] = (int) carry;
+            carry >>>= 32;
+            carry += (r[1] & MASK) + k;
+            r[1] = (int) carry;
+            carry >>>= 32;
+            for (int i = 2; i < 8; i++) {
+                carry += r[i] & MASK;
+                r[i] = (int) carry;
+                carry >>>= 32;
+            }
+        }
+        reduceOnce(r, 0);
+    }
+}
@@ -0,0 +1,202 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ECDH秘密钥缓存
+ * 以(自己的私钥, 对方公钥)为键缓存秘密钥，按最近最少使用淘汰，超过有效期后重新计算；
+ * 经常出现的对方公钥会构造预计算表，有效期过后重新计算也比普通数乘快。
+ * 结果和对私钥的检查都与DomainParameters.multiply相同。
+ * 与不用缓存时一样，只检查对方公钥在曲线上：余因子大于1的曲线上，不在G生成的子群中的公钥
+ * 会使秘密钥落在小阶子群中，调用者需要时应自行检查n*Pb=O。
+ * 可以在多个线程间共用
+ */
+public final class SecretCache {
+    // 对方公钥使用多少次后为它构造预计算表
+    private static final int HOT = 4;
+
+    private final DomainParameters domain;
+    private final ECC ecc;
+    // 有效期(纳秒)
+    private final long ttl;
+    // (na, x_Pb, y_Pb) -> 秘密钥，按访问顺序排列
+    private final LinkedHashMap<List<BigInteger>, Secret> secrets;
+    // (x_Pb, y_Pb) -> 使用次数和预计算表
+    private final LinkedHashMap<List<BigInteger>, Peer> peers;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+
+    /**
+     * @param domain    椭圆曲线参数
+     * @param maxSize   最多缓存的秘密钥个数，对方公钥的预计算表也最多这么多个
+     * @param ttlMillis 秘密钥的有效期(毫秒)
+     */
+    public SecretCache(DomainParameters domain, int maxSize, long ttlMillis) {
+        if (maxSize < 1 || ttlMillis <= 0)
+            throw new IllegalArgumentException();
+        this.domain = domain;
+        this.ecc = domain.getCurve();
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.secrets = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<BigInteger>, Secret> eldest) {
+                if (size() <= maxSize)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+        this.peers = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<BigInteger>, Peer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 计算秘密钥K=na*Pb，有效期内直接返回缓存的结果
+     *
+     * @param na 自己的私钥n
+     * @param pb 另一方的公钥p
+     * @return 秘密钥K
+     */
+    public BigInteger[] secretKey(BigInteger na, BigInteger[] pb) {
+        // 不在曲线上的公钥可能泄露私钥，不能参与计算
+        if (ECC.isZero(pb) || !ecc.exist(pb))
+            throw new IllegalArgumentException("Public key is illegal.");
+        domain.checkMultiplier(na);
+        List<BigInteger> key = Arrays.asList(na, pb[0], pb[1]);
+        long now = System.nanoTime();
+        synchronized (this) {
+            Secret s = secrets.get(key);
+            if (s != null) {
+                if (now - s.expires < 0) {
+                    hits.increment();
+                    return s.k.clone();
+                }
+                secrets.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        BigInteger[] k = compute(na, pb);
+        synchronized (this) {
+            secrets.put(key, new Secret(k, now + ttl));
+        }
+        return k.clone();
+    }
+
+    /**
+     * 计算na*Pb，Pb使用次数够多时用它的预计算表
+     */
+    private BigInteger[] compute(BigInteger na, BigInteger[] pb) {
+        Peer peer;
+        int uses;
+        synchronized (this) {
+            peer = peers.computeIfAbsent(Arrays.asList(pb[0], pb[1]), k -> new Peer());
+            uses = ++peer.uses;
+        }
+        // 抗侧信道模式不用以私钥查表的预计算表
+        if (domain.isHardened())
+            return domain.multiply(na, pb);
+        FixedBaseComb table = peer.table;
+        // 并发时可能重复构造，但表是不可变的，不影响结果
+        if (table == null && uses >= HOT)
+            peer.table = table = new FixedBaseComb(ecc, pb, domain.getN().bitLength());
+        if (table == null)
+            return domain.multiply(na, pb);
+        // 不能把na模n：Pb不在G生成的子群中时na*Pb与(na mod n)*Pb不同；超出表的范围时表会退回普通数乘
+        tableHits.increment();
+        return table.multiply(na);
+    }
+
+    DomainParameters getDomain() {
+        return domain;
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中次数，包括过期的
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 因容量不足淘汰的个数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 因过期删除的个数
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * 未命中时使用对方公钥预计算表的次数
+     */
+    public long getTableHits() {
+        return tableHits.sum();
+    }
+
+    /**
+     * 当前缓存的秘密钥个数
+     */
+    public synchronized int size() {
+        return secrets.size();
+    }
+
+    /**
+     * 清空缓存，统计数据保留
+     */
+    public synchronized void clear() {
+        secrets.clear();
+        peers.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", expirations="
+                + getExpirations() + ", tableHits=" + getTableHits() + ", size=" + size();
+    }
+
+    private static final class Secret {
+        final BigInteger[] k;
+        // 过期时间(System.nanoTime)
+        final long expires;
+
+        Secret(BigInteger[] k, long expires) {
+            this.k = k;
+            this.expires = expires;
+        }
+    }
+
+    private static final class Peer {
+        // 使用次数，访问时要持有缓存的锁
+        int uses;
+        volatile FixedBaseComb table;
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 绑定私钥的签名对象，可以在多个线程间共用
+ * 私钥和参数只检查一次，摘要对象和随机数生成器每个线程一个
+ */
+public final class Signer {
+    private final ECDSA ecdsa;
+    // 私钥d
+    private final BigInteger d;
+    // 公钥Q=dG
+    private final BigInteger[] q;
+    // 是否用RFC 6979产生k
+    private final boolean deterministic;
+
+    /**
+     * @param domain 椭圆曲线参数
+     * @param d      私钥，1<=d<=n-1
+     */
+    public Signer(DomainParameters domain, BigInteger d) {
+        this(domain, d, false);
+    }
+
+    /**
+     * @param domain        椭圆曲线参数
+     * @param d             私钥，1<=d<=n-1
+     * @param deterministic 为true时用RFC 6979由私钥和消息导出k，签名结果可重现，
+     *                      不需要读取熵源
+     */
+    public Signer(DomainParameters domain, BigInteger d, boolean deterministic) {
+        this(domain, d, deterministic, ECDSA.HASH);
+    }
+
+    /**
+     * @param domain        椭圆曲线参数
+     * @param d             私钥，1<=d<=n-1
+     * @param deterministic 是否用RFC 6979产生k
+     * @param algorithm     摘要算法，如SHA-256, SHA-384, SHA-512
+     */
+    public Signer(DomainParameters domain, BigInteger d, boolean deterministic, String algorithm) {
+        if (d.signum() <= 0 || d.compareTo(domain.getN()) >= 0)
+            throw new IllegalArgumentException();
+        this.ecdsa = new ECDSA(domain, algorithm);
+        this.d = d;
+        this.q = domain.multiplyG(d);
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * 签名
+     *
+     * @param m 消息
+     * @return 签名r, s
+     */
+    public BigInteger[] sign(BigInteger m) {
+        return signHash(ecdsa.hash(m));
+    }
+
+    /**
+     * 对流中的全部内容签名，边读边计算摘要
+     *
+     * @param in 消息
+     * @return 签名r, s
+     */
+    public BigInteger[] sign(InputStream in) throws IOException {
+        return signHash(ecdsa.hash(in));
+    }
+
+    /**
+     * 对缓冲区的position到limit签名
+     *
+     * @param message 消息
+     * @return 签名r, s
+     */
+    public BigInteger[] sign(ByteBuffer message) {
+        return signHash(ecdsa.hash(message));
+    }
+
+    /**
+     * 对文件的一段签名，文件映射到内存后计算摘要
+     *
+     * @param channel  文件
+     * @param position 开始位置
+     * @param size     字节数
+     * @return 签名r, s
+     */
+    public BigInteger[] sign(FileChannel channel, long position, long size) throws IOException {
+        return signHash(ecdsa.hash(channel, position, size));
+    }
+
+    private BigInteger[] signHash(BigInteger e) {
+        if (deterministic)
+            return ecdsa.signHash(e, d, ecdsa.deterministic(e, d));
+        return ecdsa.signHash(e, d, ECDSA.random());
+    }
+
+    /**
+     * 对应的公钥Q
+     */
+    public BigInteger[] getPublicKey() {
+        return q.clone();
+    }
+}
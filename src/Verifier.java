@@ -0,0 +1,86 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 绑定公钥的验证对象，可以在多个线程间共用
+ * 公钥只检查一次，摘要对象每个线程一个
+ */
+public final class Verifier {
+    private final ECDSA ecdsa;
+    // 公钥Q
+    private final BigInteger[] q;
+
+    /**
+     * @param domain 椭圆曲线参数
+     * @param q      公钥Q，要在曲线上且不是零点
+     */
+    public Verifier(DomainParameters domain, BigInteger[] q) {
+        this(domain, q, ECDSA.HASH);
+    }
+
+    /**
+     * @param domain    椭圆曲线参数
+     * @param q         公钥Q，要在曲线上且不是零点
+     * @param algorithm 摘要算法，要与签名时一致
+     */
+    public Verifier(DomainParameters domain, BigInteger[] q, String algorithm) {
+        if (ECC.isZero(q) || !domain.getCurve().exist(q))
+            throw new IllegalArgumentException();
+        this.ecdsa = new ECDSA(domain, algorithm);
+        this.q = q.clone();
+    }
+
+    /**
+     * 验证签名
+     *
+     * @param m 消息
+     * @param r 签名r
+     * @param s 签名s
+     * @return 签名是否合法
+     */
+    public boolean verify(BigInteger m, BigInteger r, BigInteger s) {
+        return ecdsa.verifyHash(ecdsa.hash(m), r, s, q);
+    }
+
+    /**
+     * 验证对流中全部内容的签名
+     *
+     * @param in 消息
+     * @param r  签名r
+     * @param s  签名s
+     * @return 签名是否合法
+     */
+    public boolean verify(InputStream in, BigInteger r, BigInteger s) throws IOException {
+        return ecdsa.verifyHash(ecdsa.hash(in), r, s, q);
+    }
+
+    /**
+     * 验证对缓冲区的position到limit的签名
+     *
+     * @param message 消息
+     * @param r       签名r
+     * @param s       签名s
+     * @return 签名是否合法
+     */
+    public boolean verify(ByteBuffer message, BigInteger r, BigInteger s) {
+        return ecdsa.verifyHash(ecdsa.hash(message), r, s, q);
+    }
+
+    /**
+     * 验证对文件的一段的签名
+     *
+     * @param channel  文件
+     * @param position 开始位置
+     * @param size     字节数
+     * @param r        签名r
+     * @param s        签名s
+     * @return 签名是否合法
+     */
+    public boolean verify(FileChannel channel, long position, long size, BigInteger r, BigInteger s)
+            throws IOException {
+        return ecdsa.verifyHash(ecdsa.hash(channel, position, size), r, s, q);
+    }
+}